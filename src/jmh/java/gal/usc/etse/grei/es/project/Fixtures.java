@@ -0,0 +1,60 @@
+package gal.usc.etse.grei.es.project;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import gal.usc.etse.grei.es.project.model.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Datos de proba compartidos polos benchmarks
+public final class Fixtures {
+    private Fixtures() {}
+
+    // ObjectMapper configurado igual que o da aplicación (SerializationConfiguration)
+    public static ObjectMapper mapper() {
+        return Jackson2ObjectMapperBuilder.json()
+                .filters(new SimpleFilterProvider().setFailOnUnknownId(false))
+                .build();
+    }
+
+    // Película cun tamaño semellante ao das películas reais: decenas de membros do reparto e equipo
+    public static Film film() {
+        List<Cast> cast = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            cast.add(new Cast("cast-" + i, "Actor " + i, "Spain", "https://image.example/cast/" + i + ".jpg",
+                    "Biography of actor " + i + ", born somewhere and known for many roles.",
+                    new Date(12, 4, 1960 + i % 30), null, "Character " + i));
+        }
+
+        List<Crew> crew = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Crew member = new Crew().setJob(i % 2 == 0 ? "Director of Photography" : "Sound");
+            member.setId("crew-" + i).setName("Crew " + i).setCountry("Spain");
+            crew.add(member);
+        }
+
+        List<Producer> producers = Arrays.asList(
+                new Producer("Producer One", "https://image.example/p1.png", "Spain"),
+                new Producer("Producer Two", "https://image.example/p2.png", "France")
+        );
+
+        List<Resource> resources = Arrays.asList(
+                new Resource(ResourceType.POSTER, "https://image.example/poster.jpg"),
+                new Resource(ResourceType.BACKDROP, "https://image.example/backdrop.jpg"),
+                new Resource(ResourceType.TRAILER, "https://video.example/trailer")
+        );
+
+        return new Film("550", "Fight Club",
+                "A ticking-time-bomb insomniac and a slippery soap salesman channel primal male aggression into a shocking new form of therapy.",
+                "Mischief. Mayhem. Soap.",
+                new Collection("Collection", resources),
+                Arrays.asList("Drama", "Thriller"),
+                new Date(15, 10, 1999),
+                Arrays.asList("support group", "dual identity", "nihilism", "insomnia", "split personality"),
+                producers, crew, cast, resources,
+                63000000L, Status.RELEASED, 139, 100853753L);
+    }
+}
@@ -0,0 +1,58 @@
+package gal.usc.etse.grei.es.project.controller;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import gal.usc.etse.grei.es.project.Fixtures;
+import gal.usc.etse.grei.es.project.model.Film;
+import gal.usc.etse.grei.es.project.model.Views;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Serialización das respostas de películas tal e como a fan os controladores,
+// cos filtros da vista completa e da vista resumida dos listados
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+    private MappingJackson2HttpMessageConverter converter;
+    private Film film;
+    private List<Film> page;
+    private FilterProvider full;
+    private FilterProvider summary;
+
+    @Setup
+    public void setup() {
+        converter = new MappingJackson2HttpMessageConverter(Fixtures.mapper());
+        film = Fixtures.film();
+        page = Collections.nCopies(20, film);
+        full = new SimpleFilterProvider().addFilter("movieFilter", SimpleBeanPropertyFilter.serializeAll());
+        summary = new SimpleFilterProvider().addFilter("movieFilter", SimpleBeanPropertyFilter.filterOutAllExcept(Views.FILM_SUMMARY));
+    }
+
+    @Benchmark
+    public byte[] fullFilm() throws IOException {
+        return write(film, full);
+    }
+
+    @Benchmark
+    public byte[] summaryPage() throws IOException {
+        return write(page, summary);
+    }
+
+    private byte[] write(Object body, FilterProvider filters) throws IOException {
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setFilters(filters);
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(value, MediaType.APPLICATION_JSON, message);
+        return message.getBodyAsBytes();
+    }
+}
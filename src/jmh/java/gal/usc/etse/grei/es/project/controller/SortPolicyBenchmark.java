@@ -0,0 +1,26 @@
+package gal.usc.etse.grei.es.project.controller;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Sort;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lectura do parámetro "sort" común a todos os listados
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SortPolicyBenchmark {
+    private List<String> sort;
+
+    @Setup
+    public void setup() {
+        sort = Arrays.asList("", "-releaseDate");
+    }
+
+    @Benchmark
+    public Sort parse() {
+        return SortPolicy.FILM.parse(sort);
+    }
+}
@@ -0,0 +1,48 @@
+package gal.usc.etse.grei.es.project.filter;
+
+import gal.usc.etse.grei.es.project.configuration.JwtKeys;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.concurrent.TimeUnit;
+
+// Emisión do token ao iniciar sesión e validación do token en cada petición autenticada
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TokenBenchmark {
+    private AuthenticationFilter authentication;
+    private AuthorizationFilter authorization;
+    private Authentication login;
+    private String header;
+
+    @Setup
+    public void setup() {
+        JwtKeys keys = JwtKeys.random();
+        AuthenticationManager manager = request -> request;
+        authentication = new AuthenticationFilter(manager, keys);
+        authorization = new AuthorizationFilter(manager, keys);
+
+        User user = new User("test@test.com", "", AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"));
+        login = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+        header = issue();
+    }
+
+    @Benchmark
+    public String issue() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        authentication.successfulAuthentication(new MockHttpServletRequest(), response, null, login);
+        return response.getHeader("Authentication");
+    }
+
+    @Benchmark
+    public UsernamePasswordAuthenticationToken verify() {
+        return authorization.getAuthentication(header);
+    }
+}
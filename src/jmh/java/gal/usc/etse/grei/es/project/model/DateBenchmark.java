@@ -0,0 +1,23 @@
+package gal.usc.etse.grei.es.project.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Conversión das datas recibidas como parámetro (dd/mm/aaaa)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DateBenchmark {
+    private String text;
+
+    @Setup
+    public void setup() {
+        text = "15/10/1999";
+    }
+
+    @Benchmark
+    public Date parse() {
+        return new Date(text);
+    }
+}
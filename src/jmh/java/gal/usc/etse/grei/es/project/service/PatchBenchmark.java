@@ -0,0 +1,40 @@
+package gal.usc.etse.grei.es.project.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatchException;
+import gal.usc.etse.grei.es.project.Fixtures;
+import gal.usc.etse.grei.es.project.model.Film;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Aplicación dun parche JSON sobre unha película en memoria (conversión a JsonNode, parche e volta)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PatchBenchmark {
+    private PatchUtils patch;
+    private Film film;
+    private List<Map<String, Object>> updates;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = Fixtures.mapper();
+        patch = new PatchUtils(mapper, null, null);
+        film = Fixtures.film();
+        updates = mapper.readValue(
+                "[{\"op\": \"replace\", \"path\": \"/title\", \"value\": \"Fight Club (Remastered)\"}," +
+                " {\"op\": \"add\", \"path\": \"/genres/-\", \"value\": \"Cult\"}," +
+                " {\"op\": \"replace\", \"path\": \"/releaseDate/year\", \"value\": 2000}]",
+                new TypeReference<List<Map<String, Object>>>() {});
+    }
+
+    @Benchmark
+    public Film patchFilm() throws JsonPatchException {
+        return patch.patch(film, updates);
+    }
+}
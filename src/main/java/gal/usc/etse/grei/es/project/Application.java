@@ -2,8 +2,13 @@ package gal.usc.etse.grei.es.project;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+// Rellena os campos @LastModifiedDate ao gardar cos repositorios
+@EnableMongoAuditing
 public class Application {
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
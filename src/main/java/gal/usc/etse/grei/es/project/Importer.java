@@ -0,0 +1,66 @@
+package gal.usc.etse.grei.es.project;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gal.usc.etse.grei.es.project.configuration.SerializationConfiguration;
+import gal.usc.etse.grei.es.project.service.ImportReport;
+import gal.usc.etse.grei.es.project.service.ImportService;
+import gal.usc.etse.grei.es.project.service.RatingService;
+import gal.usc.etse.grei.es.project.service.SequenceGeneratorService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+// Carga masiva dende a liña de comandos, sen arrancar o servidor web:
+//   ./gradlew importData --args='movies films.ndjson.gz --spring.data.mongodb.uri=...'
+// O informe escríbese en JSON pola saída estándar.
+// O contexto só leva os servizos que usa a importación: sen escaneo de compoñentes non se cargan
+// os índices en memoria, o grafo de amizades nin os modelos de recomendación, que non serven
+// de nada nun proceso que remata ao acabar a carga. Ao non ser un @Component, a aplicación
+// web tampouco recolle esta configuración.
+@EnableAutoConfiguration(exclude = {SecurityAutoConfiguration.class, UserDetailsServiceAutoConfiguration.class})
+@Import({ImportService.class, SequenceGeneratorService.class, RatingService.class, SerializationConfiguration.class})
+public class Importer {
+    private static final int BUFFER = 64 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).collect(Collectors.toList());
+        if (arguments.size() != 2 || !Arrays.asList("movies", "assessments").contains(arguments.get(0))) {
+            System.err.println("Usage: Importer <movies|assessments> <file.ndjson[.gz]> [--property=value...]");
+            System.exit(2);
+        }
+        String type = arguments.get(0);
+        Path file = Paths.get(arguments.get(1));
+
+        ImportReport report;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Importer.class)
+                .web(WebApplicationType.NONE)
+                .run(args);
+             InputStream in = open(file)) {
+            ImportService imports = context.getBean(ImportService.class);
+            report = "movies".equals(type) ? imports.importMovies(in) : imports.importAssessments(in);
+            System.out.println(context.getBean(ObjectMapper.class).writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        }
+
+        System.exit(report.getFailed() > 0 ? 1 : 0);
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER);
+        return file.toString().endsWith(".gz") ? new GZIPInputStream(in, BUFFER) : in;
+    }
+}
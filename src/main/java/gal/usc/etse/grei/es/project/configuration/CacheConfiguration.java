@@ -0,0 +1,51 @@
+package gal.usc.etse.grei.es.project.configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+// Activamos o procesamento das etiquetas @Cacheable e @CacheEvict
+@EnableCaching
+public class CacheConfiguration {
+    public static final String FILMS = "films";
+    public static final String USERS = "users";
+    public static final String CREDENTIALS = "credentials";
+
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${cache.films.maximum-size:10000}") long filmsSize,
+            @Value("${cache.films.expire-after-write:10m}") Duration filmsTtl,
+            @Value("${cache.users.maximum-size:10000}") long usersSize,
+            @Value("${cache.users.expire-after-write:10m}") Duration usersTtl,
+            @Value("${cache.credentials.maximum-size:10000}") long credentialsSize,
+            @Value("${cache.credentials.expire-after-write:1m}") Duration credentialsTtl
+    ) {
+        // Cada caché ten o seu propio tamaño máximo e tempo de vida, e rexistra as estatísticas
+        // de acertos, fallos e expulsións para publicalas a través do actuator
+        CaffeineCacheManager manager = new CaffeineCacheManager();
+        manager.registerCustomCache(FILMS, Caffeine.newBuilder()
+                .maximumSize(filmsSize)
+                .expireAfterWrite(filmsTtl)
+                .recordStats()
+                .build());
+        manager.registerCustomCache(USERS, Caffeine.newBuilder()
+                .maximumSize(usersSize)
+                .expireAfterWrite(usersTtl)
+                .recordStats()
+                .build());
+        manager.registerCustomCache(CREDENTIALS, Caffeine.newBuilder()
+                .maximumSize(credentialsSize)
+                .expireAfterWrite(credentialsTtl)
+                .recordStats()
+                .build());
+
+        return manager;
+    }
+}
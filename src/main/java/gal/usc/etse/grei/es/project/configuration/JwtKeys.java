@@ -0,0 +1,124 @@
+package gal.usc.etse.grei.es.project.configuration;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Conxunto de claves coas que se asinan e verifican os tokens. Os tokens levan na cabeceira
+// o identificador (kid) da clave coa que se asinaron, de forma que se poden rotar as claves
+// mantendo durante un tempo as antigas só para verificar.
+public class JwtKeys {
+    private static final Logger logger = LoggerFactory.getLogger(JwtKeys.class);
+    private static final int MINIMUM_KEY_BYTES = 64;
+    private static final String RANDOM_KEY = "random";
+
+    private final String activeKey;
+    private final Map<String, Key> keys;
+    private final SigningKeyResolver resolver = new SigningKeyResolverAdapter() {
+        @Override
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            // Os tokens sen kid son anteriores á rotación de claves: verificámolos coa clave activa
+            String kid = header.getKeyId() != null ? header.getKeyId() : activeKey;
+            Key key = keys.get(kid);
+            if (key == null) throw new SignatureException("Unknown signing key " + kid);
+            return key;
+        }
+    };
+
+    public JwtKeys(String activeKey, Map<String, Key> keys) {
+        if (!keys.containsKey(activeKey))
+            throw new IllegalStateException("The active JWT key " + activeKey + " is not one of the configured keys");
+        this.activeKey = activeKey;
+        this.keys = Collections.unmodifiableMap(new LinkedHashMap<>(keys));
+    }
+
+    // Clave aleatoria para unha única instancia: os tokens deixan de valer ao reiniciar
+    public static JwtKeys random() {
+        return new JwtKeys(RANDOM_KEY, Collections.singletonMap(RANDOM_KEY, Keys.secretKeyFor(SignatureAlgorithm.HS512)));
+    }
+
+    public static JwtKeys from(JwtProperties properties) {
+        Map<String, Key> keys = new LinkedHashMap<>();
+        properties.getKeys().forEach((kid, secret) -> keys.put(kid, hmac(kid, Base64.getDecoder().decode(secret))));
+        if (properties.getKeystore().getLocation() != null) keys.putAll(load(properties.getKeystore()));
+
+        if (keys.isEmpty()) {
+            logger.warn("No JWT keys configured (jwt.keys or jwt.keystore): signing with a random key. " +
+                    "Tokens will not be accepted by other instances nor survive a restart");
+            return random();
+        }
+
+        String active = properties.getActiveKey();
+        if (active == null) {
+            if (keys.size() > 1)
+                throw new IllegalStateException("Several JWT keys configured but no jwt.active-key to sign with");
+            active = keys.keySet().iterator().next();
+        }
+        return new JwtKeys(active, keys);
+    }
+
+    public String getActiveKeyId() {
+        return activeKey;
+    }
+
+    public Key getActiveKey() {
+        return keys.get(activeKey);
+    }
+
+    // Indica se a clave segue no conxunto, é dicir, se aínda aceptamos os tokens asinados con ela
+    public boolean accepts(String kid) {
+        return keys.containsKey(kid);
+    }
+
+    public SigningKeyResolver getResolver() {
+        return resolver;
+    }
+
+    // Lemos todas as claves secretas do almacén, empregando o alias como kid
+    private static Map<String, Key> load(JwtProperties.Keystore keystore) {
+        Map<String, Key> keys = new LinkedHashMap<>();
+        char[] password = keystore.getPassword().toCharArray();
+
+        try (InputStream input = keystore.getLocation().getInputStream()) {
+            KeyStore store = KeyStore.getInstance(keystore.getType());
+            store.load(input, password);
+
+            Enumeration<String> aliases = store.aliases();
+            while (aliases.hasMoreElements()) {
+                String alias = aliases.nextElement();
+                if (!store.isKeyEntry(alias)) continue;
+
+                Key key = store.getKey(alias, password);
+                if (key instanceof SecretKey) keys.put(alias, hmac(alias, key.getEncoded()));
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to load the JWT keystore " + keystore.getLocation(), e);
+        }
+
+        return keys;
+    }
+
+    private static Key hmac(String kid, byte[] secret) {
+        if (secret.length < MINIMUM_KEY_BYTES)
+            throw new IllegalStateException("The JWT key " + kid + " must be at least " + MINIMUM_KEY_BYTES + " bytes long for HS512");
+        return Keys.hmacShaKeyFor(secret);
+    }
+}
@@ -0,0 +1,75 @@
+package gal.usc.etse.grei.es.project.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.io.Resource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Claves de firmado dos tokens JWT. Todas as instancias da aplicación teñen que compartir
+// as mesmas claves para aceptar os tokens emitidos polas demais.
+//
+//  jwt.active-key=2021-03            identificador (kid) da clave coa que se asinan os tokens novos
+//  jwt.keys.2021-03=<base64>         claves HMAC-SHA512 (mínimo 64 bytes) aceptadas para verificar
+//  jwt.keys.2021-01=<base64>         as claves antigas mantéñense mentres haxa tokens en circulación
+//  jwt.keystore.location=file:...    alternativamente, un almacén de claves cuxos alias son os kid
+@ConfigurationProperties(prefix = "jwt")
+public class JwtProperties {
+    private String activeKey;
+    private Map<String, String> keys = new LinkedHashMap<>();
+    private Keystore keystore = new Keystore();
+
+    public String getActiveKey() {
+        return activeKey;
+    }
+
+    public void setActiveKey(String activeKey) {
+        this.activeKey = activeKey;
+    }
+
+    public Map<String, String> getKeys() {
+        return keys;
+    }
+
+    public void setKeys(Map<String, String> keys) {
+        this.keys = keys;
+    }
+
+    public Keystore getKeystore() {
+        return keystore;
+    }
+
+    public void setKeystore(Keystore keystore) {
+        this.keystore = keystore;
+    }
+
+    public static class Keystore {
+        private Resource location;
+        private String type = "PKCS12";
+        private String password = "";
+
+        public Resource getLocation() {
+            return location;
+        }
+
+        public void setLocation(Resource location) {
+            this.location = location;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+    }
+}
@@ -3,9 +3,11 @@ package gal.usc.etse.grei.es.project.configuration;
 import gal.usc.etse.grei.es.project.filter.AuthenticationFilter;
 import gal.usc.etse.grei.es.project.filter.AuthorizationFilter;
 import gal.usc.etse.grei.es.project.service.AuthenticationService;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import gal.usc.etse.grei.es.project.service.BoundedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
@@ -18,11 +20,9 @@ import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.access.expression.DefaultWebSecurityExpressionHandler;
 
-import java.security.Key;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -33,13 +33,31 @@ import java.util.Map;
 @EnableWebSecurity
 // Activamos o procesamento de etiquetas @Preauthorize e @Postauthorize
 @EnableGlobalMethodSecurity(prePostEnabled = true)
+// Lemos as claves de firmado dos tokens da configuración
+@EnableConfigurationProperties(JwtProperties.class)
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     private final AuthenticationService auth;
-    private static final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+    private final JwtProperties jwt;
+    private final MeterRegistry registry;
+    private final int strength;
+    private final int hashingThreads;
+    private final int hashingQueue;
 
     @Autowired
-    public SecurityConfiguration(AuthenticationService auth) {
+    public SecurityConfiguration(
+            AuthenticationService auth,
+            JwtProperties jwt,
+            MeterRegistry registry,
+            @Value("${passwords.bcrypt.strength:10}") int strength,
+            @Value("${passwords.pool.threads:0}") int hashingThreads,
+            @Value("${passwords.pool.queue:64}") int hashingQueue
+    ) {
         this.auth = auth;
+        this.jwt = jwt;
+        this.registry = registry;
+        this.strength = strength;
+        this.hashingThreads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+        this.hashingQueue = hashingQueue;
     }
 
     @Override
@@ -61,12 +79,14 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     protected void configure(HttpSecurity http) throws Exception {
         // Deshabilitamos a protección contra ataques CSRF
         http.csrf().disable()
+                // Os endpoints do actuator (métricas, cachés...) só son accesibles para os administradores
+                .authorizeRequests().antMatchers("/actuator/**").hasRole("ADMIN")
                 // Indicamos que por defecto permitimos o acceso de calquera a todos os servizos
-                .authorizeRequests().anyRequest().permitAll()
+                .anyRequest().permitAll()
                 .and()
                 // Engadimos os nosos filtros á cadea de filtros das chamadas
-                .addFilter(new AuthenticationFilter(authenticationManager(), tokenSignKey()))
-                .addFilter(new AuthorizationFilter(authenticationManager(), tokenSignKey()))
+                .addFilter(new AuthenticationFilter(authenticationManager(), tokenKeys()))
+                .addFilter(new AuthorizationFilter(authenticationManager(), tokenKeys()))
                 // Especificamos que queremos sesións sen estado (REST é, por definición, sen estado)
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
     }
@@ -74,8 +94,8 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     @Bean
     public PasswordEncoder passwordEncoder(){
         // Creamos unha instancia do algoritmo BCrypt para empregar como encoder
-        // de contrasinais
-        return new BCryptPasswordEncoder();
+        // de contrasinais, que calcula os hashes nun grupo de fíos propio e limitado
+        return new BoundedPasswordEncoder(strength, hashingThreads, hashingQueue, registry);
     }
 
     @Bean
@@ -93,8 +113,8 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     }
 
     @Bean
-    public Key tokenSignKey() {
-        // Xeramos unha clave de firmado aleatoria para o algoritmo SHA512
-        return SecurityConfiguration.key;
+    public JwtKeys tokenKeys() {
+        // Cargamos as claves de firmado compartidas por todas as instancias (ou unha aleatoria se non hai)
+        return JwtKeys.from(jwt);
     }
 }
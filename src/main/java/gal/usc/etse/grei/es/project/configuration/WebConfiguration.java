@@ -0,0 +1,26 @@
+package gal.usc.etse.grei.es.project.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gal.usc.etse.grei.es.project.controller.ViewedResponseConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+    private final ObjectMapper mapper;
+
+    @Autowired
+    public WebConfiguration(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Engadimos o conversor das respostas con vista antes dos de Spring
+        converters.add(0, new ViewedResponseConverter(mapper));
+    }
+}
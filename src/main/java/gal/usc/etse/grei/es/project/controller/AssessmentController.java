@@ -1,8 +1,5 @@
 package gal.usc.etse.grei.es.project.controller;
 
-import com.fasterxml.jackson.databind.ser.FilterProvider;
-import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
-import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.github.fge.jsonpatch.JsonPatchException;
 import gal.usc.etse.grei.es.project.model.Assessment;
 import gal.usc.etse.grei.es.project.model.Film;
@@ -24,7 +21,6 @@ import org.springframework.hateoas.server.LinkRelationProvider;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
@@ -81,14 +77,12 @@ public class AssessmentController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             )
     })
-    ResponseEntity<MappingJacksonValue> getAssessment(@PathVariable("id") long id) {
+    ResponseEntity<Assessment> getAssessment(@PathVariable("id") long id) {
         try{
             Optional<Assessment> assessment = assessments.get(id);
             if(assessment.isPresent()) {
                 Link self = linkTo(methodOn(AssessmentController.class).getAssessment(id)).withSelfRel();
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(assessment.get());
-                mappingJacksonValue.setFilters(new SimpleFilterProvider().addFilter("userFilter", SimpleBeanPropertyFilter.filterOutAllExcept("email")).addFilter("movieFilter", SimpleBeanPropertyFilter.filterOutAllExcept("id", "title")));
-                return ResponseEntity.ok().header(HttpHeaders.LINK, self.toString()).body(mappingJacksonValue);
+                return ResponseEntity.ok().header(HttpHeaders.LINK, self.toString()).body(assessment.get());
             }
             return ResponseEntity.notFound().build();
         }catch (Exception e){
@@ -0,0 +1,206 @@
+package gal.usc.etse.grei.es.project.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import gal.usc.etse.grei.es.project.service.AssessmentService;
+import gal.usc.etse.grei.es.project.service.MovieService;
+import gal.usc.etse.grei.es.project.service.UserService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Instant;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+// Exportación completa das coleccións en NDJSON (un documento por liña). Os documentos lense
+// dun cursor de Mongo e escríbense un a un directamente na resposta, polo que a memoria usada
+// non depende do tamaño da colección.
+@RestController
+@Tag(name = "Export API", description = "Bulk export operations")
+@RequestMapping("export")
+@SecurityRequirement(name = "JWT")
+public class ExportController {
+    static final String NDJSON = "application/x-ndjson";
+    private static final int GZIP_BUFFER = 64 * 1024;
+
+    private final MovieService movies;
+    private final UserService users;
+    private final AssessmentService assessments;
+    private final ObjectWriter movieWriter;
+    private final ObjectWriter userWriter;
+    private final ObjectWriter assessmentWriter;
+    private final ObjectMapper mapper;
+
+    @Autowired
+    public ExportController(MovieService movies, UserService users, AssessmentService assessments, ObjectMapper mapper) {
+        this.movies = movies;
+        this.users = users;
+        this.assessments = assessments;
+        this.mapper = mapper;
+        // Un documento por liña, sen baleirar o búfer despois de cada un
+        this.movieWriter = ndjson(ResponseView.FILM_FULL.writer(mapper));
+        this.userWriter = ndjson(ResponseView.USER_PUBLIC.writer(mapper));
+        this.assessmentWriter = ndjson(mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+    }
+
+    //Export movies
+    @GetMapping(
+            path = "movies",
+            produces = NDJSON
+    )
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "exportMovies",
+            summary = "Export all movies",
+            description = "Stream every movie as NDJSON, optionally only those modified since the given instant. " +
+                    "The response is gzip encoded when the client accepts it."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "One movie per line",
+                    content = @Content(mediaType = NDJSON)
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Not an administrator",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+    })
+    ResponseEntity<StreamingResponseBody> exportMovies(
+            @RequestParam(name = "modifiedSince", required = false) Instant modifiedSince,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, defaultValue = "") String encoding
+    ) {
+        return export("movies", movieWriter, () -> movies.stream(modifiedSince), encoding);
+    }
+
+    //Export users
+    @GetMapping(
+            path = "users",
+            produces = NDJSON
+    )
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "exportUsers",
+            summary = "Export all users",
+            description = "Stream every user, without passwords, as NDJSON, optionally only those modified since the given instant. " +
+                    "The response is gzip encoded when the client accepts it."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "One user per line",
+                    content = @Content(mediaType = NDJSON)
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Not an administrator",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+    })
+    ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(name = "modifiedSince", required = false) Instant modifiedSince,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, defaultValue = "") String encoding
+    ) {
+        return export("users", userWriter, () -> users.stream(modifiedSince), encoding);
+    }
+
+    //Export assessments
+    @GetMapping(
+            path = "assessments",
+            produces = NDJSON
+    )
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "exportAssessments",
+            summary = "Export all assessments",
+            description = "Stream every assessment as NDJSON, optionally only those modified since the given instant. " +
+                    "The response is gzip encoded when the client accepts it."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "One assessment per line",
+                    content = @Content(mediaType = NDJSON)
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Not an administrator",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+    })
+    ResponseEntity<StreamingResponseBody> exportAssessments(
+            @RequestParam(name = "modifiedSince", required = false) Instant modifiedSince,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, defaultValue = "") String encoding
+    ) {
+        return export("assessments", assessmentWriter, () -> assessments.stream(modifiedSince), encoding);
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(String name, ObjectWriter writer, Supplier<? extends CloseableIterator<?>> source, String encoding) {
+        boolean gzip = encoding.toLowerCase().contains("gzip");
+
+        // O cursor ábrese e péchase no fío que escribe a resposta
+        StreamingResponseBody body = out -> {
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, GZIP_BUFFER) : null;
+            try (CloseableIterator<?> documents = source.get();
+                 JsonGenerator generator = mapper.getFactory().createGenerator(compressed != null ? compressed : out)
+                         .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                boolean empty = true;
+                while (documents.hasNext()) {
+                    writer.writeValue(generator, documents.next());
+                    empty = false;
+                }
+                // O separador só se escribe entre documentos: rematamos tamén a última liña
+                if (!empty) generator.writeRaw('\n');
+            }
+            if (compressed != null) compressed.finish();
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(name + ".ndjson").build().toString());
+        if (gzip) response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        return response.body(body);
+    }
+
+    private static ObjectWriter ndjson(ObjectWriter writer) {
+        return writer.withRootValueSeparator("\n").without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+}
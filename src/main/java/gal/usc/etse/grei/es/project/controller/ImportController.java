@@ -0,0 +1,159 @@
+package gal.usc.etse.grei.es.project.controller;
+
+import gal.usc.etse.grei.es.project.service.ImportReport;
+import gal.usc.etse.grei.es.project.service.ImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+@RestController
+@Tag(name = "Import API", description = "Bulk import operations")
+@RequestMapping("import")
+@SecurityRequirement(name = "JWT")
+public class ImportController {
+    private final ImportService imports;
+
+    @Autowired
+    public ImportController(ImportService imports) {
+        this.imports = imports;
+    }
+
+    //Import movies
+    @PostMapping(
+            path = "movies",
+            consumes = ExportController.NDJSON,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "importMovies",
+            summary = "Import movies in bulk",
+            description = "Create the movies of an NDJSON stream, one per line. The body may be gzip encoded. " +
+                    "Invalid rows and rows with an existing id are skipped and listed in the report."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "The import report",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ImportReport.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "The stream is not valid NDJSON. The report shows the rows imported before the error",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ImportReport.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Not an administrator",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+    })
+    ResponseEntity<ImportReport> importMovies(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Movies to be created, one per line",
+                    content = @Content(mediaType = ExportController.NDJSON)
+            )
+            InputStream body,
+            @RequestHeader(name = HttpHeaders.CONTENT_ENCODING, defaultValue = "") String encoding
+    ) {
+        try {
+            return report(imports.importMovies(decode(body, encoding)));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    //Import assessments
+    @PostMapping(
+            path = "assessments",
+            consumes = ExportController.NDJSON,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "importAssessments",
+            summary = "Import assessments in bulk",
+            description = "Create the assessments of an NDJSON stream, one per line. The body may be gzip encoded. " +
+                    "Ids are always assigned by the server. Invalid rows and rows referring to unknown movies " +
+                    "or users are skipped and listed in the report."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "The import report",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ImportReport.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "The stream is not valid NDJSON. The report shows the rows imported before the error",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ImportReport.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Not an administrator",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+    })
+    ResponseEntity<ImportReport> importAssessments(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Assessments to be created, one per line",
+                    content = @Content(mediaType = ExportController.NDJSON)
+            )
+            InputStream body,
+            @RequestHeader(name = HttpHeaders.CONTENT_ENCODING, defaultValue = "") String encoding
+    ) {
+        try {
+            return report(imports.importAssessments(decode(body, encoding)));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private static InputStream decode(InputStream body, String encoding) throws IOException {
+        return encoding.toLowerCase().contains("gzip") ? new GZIPInputStream(body) : body;
+    }
+
+    private static ResponseEntity<ImportReport> report(ImportReport report) {
+        if (report.isAborted()) return ResponseEntity.badRequest().body(report);
+        return ResponseEntity.ok(report);
+    }
+}
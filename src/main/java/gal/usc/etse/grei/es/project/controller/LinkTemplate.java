@@ -0,0 +1,82 @@
+package gal.usc.etse.grei.es.project.controller;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+// Ligazóns HATEOAS construídas sen linkTo(methodOn(...)): a ruta de cada método calcúlase
+// unha única vez a partir das súas anotacións, e en cada petición só se expanden as variables
+// ou se cambian os parámetros de paxinación sobre a URL da propia petición.
+final class LinkTemplate {
+    private final String path;
+
+    private LinkTemplate(String path) {
+        this.path = path;
+    }
+
+    // Ruta do método indicado do controlador, combinando o @RequestMapping da clase e o do método
+    static LinkTemplate of(Class<?> controller, String method) {
+        Method handler = Arrays.stream(controller.getDeclaredMethods())
+                .filter(candidate -> candidate.getName().equals(method))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown handler method " + method));
+
+        return new LinkTemplate(join(mapping(controller), mapping(handler)));
+    }
+
+    // Ligazón co patrón sen expandir, p.e. /movies/{id}
+    Link template(LinkRelation relation) {
+        return Link.of(base().path(path).build().toUriString(), relation);
+    }
+
+    // Ligazón coas variables da ruta substituídas polos valores indicados
+    Link expand(LinkRelation relation, Object... variables) {
+        return Link.of(base().path(path).buildAndExpand(variables).encode().toUriString(), relation);
+    }
+
+    // A petición actual tal e como chegou
+    static Link current(LinkRelation relation) {
+        return Link.of(ServletUriComponentsBuilder.fromCurrentRequest().build(true).toUriString(), relation);
+    }
+
+    // A petición actual apuntando a outra páxina do listado
+    static Link page(LinkRelation relation, int page, int size) {
+        return Link.of(ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("page", page)
+                .replaceQueryParam("size", size)
+                .replaceQueryParam("after")
+                .build(true)
+                .toUriString(), relation);
+    }
+
+    // A petición actual continuando dende o cursor indicado
+    static Link cursor(LinkRelation relation, String after) {
+        return Link.of(ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("after", after)
+                .build(true)
+                .toUriString(), relation);
+    }
+
+    private static UriComponentsBuilder base() {
+        return ServletUriComponentsBuilder.fromCurrentContextPath();
+    }
+
+    private static String mapping(AnnotatedElement element) {
+        RequestMapping mapping = AnnotatedElementUtils.findMergedAnnotation(element, RequestMapping.class);
+        if (mapping == null || mapping.path().length == 0) return "";
+        return mapping.path()[0];
+    }
+
+    private static String join(String prefix, String suffix) {
+        String path = "/" + prefix.replaceAll("^/+|/+$", "");
+        if (suffix.isEmpty()) return path;
+        return path.replaceAll("/+$", "") + "/" + suffix.replaceAll("^/+", "");
+    }
+}
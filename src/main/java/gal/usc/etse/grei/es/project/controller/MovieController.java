@@ -1,15 +1,14 @@
 package gal.usc.etse.grei.es.project.controller;
 
-import com.fasterxml.jackson.databind.ser.FilterProvider;
-import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
-import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.github.fge.jsonpatch.JsonPatchException;
 import gal.usc.etse.grei.es.project.model.*;
 import gal.usc.etse.grei.es.project.service.AssessmentService;
+import gal.usc.etse.grei.es.project.service.KeysetSlice;
 import gal.usc.etse.grei.es.project.service.MovieService;
 import gal.usc.etse.grei.es.project.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.headers.Header;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -20,6 +19,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.hateoas.IanaLinkRelations;
 import org.springframework.hateoas.Link;
@@ -27,16 +27,14 @@ import org.springframework.hateoas.server.LinkRelationProvider;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
@@ -46,6 +44,9 @@ import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
 @RequestMapping("movies")
 @SecurityRequirement(name = "JWT")
 public class MovieController {
+    // Rutas resoltas unha única vez ao cargar o controlador
+    private static final LinkTemplate MOVIE = LinkTemplate.of(MovieController.class, "getMovie");
+
     private final MovieService movies;
     private final LinkRelationProvider relationProvider;
     private final AssessmentService assessments;
@@ -67,7 +68,8 @@ public class MovieController {
     @Operation(
             operationId = "getAllMovies",
             summary = "Get all Movies",
-            description = "Get all movies that conform to optional filters"
+            description = "Get all movies that conform to optional filters. releasedFrom and releasedTo (dd/mm/yyyy) " +
+                    "limit the release date to an inclusive range. sort accepts one of +/-title, releaseDate, rating or id"
     )
     @ApiResponses({
             @ApiResponse(
@@ -126,7 +128,7 @@ public class MovieController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             ),
     })
-    ResponseEntity<MappingJacksonValue> getAllMovies(
+    ResponseEntity<ViewedResponse> getAllMovies(
             @RequestParam(name = "page", defaultValue = "0") int page,
             @RequestParam(name = "size", defaultValue = "20") int size,
             @RequestParam(name = "sort", defaultValue = "") List<String> sort,
@@ -136,46 +138,52 @@ public class MovieController {
             @RequestParam(name = "crew", required = false) List<Crew> crew,
             @RequestParam(name = "cast", required = false) List<Cast> cast,
             @RequestParam(name = "producers", required = false) List<Producer> producers,
-            @RequestParam(name = "releaseDate", required = false) Date releaseDate
+            @RequestParam(name = "releaseDate", required = false) Date releaseDate,
+            @RequestParam(name = "releasedFrom", required = false) Date releasedFrom,
+            @RequestParam(name = "releasedTo", required = false) Date releasedTo,
+            @RequestParam(name = "after", required = false) String after
     ) {
         try{
-            List<Sort.Order> criteria = sort.stream().map(string -> {
-                if(string.startsWith("+")){
-                    return Sort.Order.asc(string.substring(1));
-                } else if (string.startsWith("-")) {
-                    return Sort.Order.desc(string.substring(1));
-                } else return null;
-            }).filter(Objects::nonNull).collect(Collectors.toList());
-
-            Optional<Page<Film>> result = movies.getAll(page, size, Sort.by(criteria), title, keywords, genres, crew, cast, producers, releaseDate);
-            SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.filterOutAllExcept("id","title","overview","genres","releaseDate","resources");
-            FilterProvider filterProvider = new SimpleFilterProvider().addFilter("movieFilter", filter);
+            //Malformed dates would be built as 0/0/0 and silently match everything or nothing
+            for(Date date : Arrays.asList(releaseDate, releasedFrom, releasedTo)) {
+                if(date != null && !Date.valid(date)) { return ResponseEntity.badRequest().build(); }
+            }
+
+            Sort criteria = SortPolicy.FILM.parse(sort);
+
+            //Cursor mode: no total count, the next link carries the cursor
+            if(after != null) {
+                Optional<KeysetSlice<Film>> slice = movies.getAllAfter(after, size, criteria, title, keywords, genres, crew, cast, producers, releaseDate, releasedFrom, releasedTo);
+                if(slice.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+                Link self = LinkTemplate.current(IanaLinkRelations.SELF);
+                Link one = MOVIE.template(relationProvider.getItemResourceRelFor(Film.class));
+                ViewedResponse body = ResponseView.FILM_SUMMARY.wrap(slice.get());
+
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                        .header(HttpHeaders.LINK, self.toString())
+                        .header(HttpHeaders.LINK, one.toString());
+                if(slice.get().hasNext()) {
+                    Link next = LinkTemplate.cursor(IanaLinkRelations.NEXT, slice.get().getNextCursor());
+                    response.header(HttpHeaders.LINK, next.toString());
+                }
+                return response.body(body);
+            }
+
+            Optional<Page<Film>> result = movies.getAll(page, size, criteria, title, keywords, genres, crew, cast, producers, releaseDate, releasedFrom, releasedTo);
 
             if(result.isPresent()) {
                 Page<Film> data = result.get();
                 Pageable metadata = data.getPageable();
 
-                Link self = linkTo(
-                        methodOn(MovieController.class).getAllMovies(page, size, sort, title, keywords, genres, crew, cast, producers, releaseDate)
-                ).withSelfRel();
-                Link first = linkTo(
-                        methodOn(MovieController.class).getAllMovies(metadata.first().getPageNumber(), size, sort, title, keywords, genres, crew, cast, producers, releaseDate)
-                ).withRel(IanaLinkRelations.FIRST);
-                Link last = linkTo(
-                        methodOn(MovieController.class).getAllMovies(data.getTotalPages() - 1, size, sort, title, keywords, genres, crew, cast, producers, releaseDate)
-                ).withRel(IanaLinkRelations.LAST);
-                Link next = linkTo(
-                        methodOn(MovieController.class).getAllMovies(metadata.next().getPageNumber(), size, sort, title, keywords, genres, crew, cast, producers, releaseDate)
-                ).withRel(IanaLinkRelations.NEXT);
-                Link previous = linkTo(
-                        methodOn(MovieController.class).getAllMovies(metadata.previousOrFirst().getPageNumber(), size, sort, title, keywords, genres, crew, cast, producers, releaseDate)
-                ).withRel(IanaLinkRelations.PREVIOUS);
-
-                Link one = linkTo(
-                        methodOn(MovieController.class).getMovie(null)
-                ).withRel(relationProvider.getItemResourceRelFor(Film.class));
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(result.get());
-                mappingJacksonValue.setFilters(filterProvider);
+                Link self = LinkTemplate.page(IanaLinkRelations.SELF, page, size);
+                Link first = LinkTemplate.page(IanaLinkRelations.FIRST, metadata.first().getPageNumber(), size);
+                Link last = LinkTemplate.page(IanaLinkRelations.LAST, data.getTotalPages() - 1, size);
+                Link next = LinkTemplate.page(IanaLinkRelations.NEXT, metadata.next().getPageNumber(), size);
+                Link previous = LinkTemplate.page(IanaLinkRelations.PREVIOUS, metadata.previousOrFirst().getPageNumber(), size);
+
+                Link one = MOVIE.template(relationProvider.getItemResourceRelFor(Film.class));
+                ViewedResponse body = ResponseView.FILM_SUMMARY.wrap(result.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
@@ -184,7 +192,7 @@ public class MovieController {
                         .header(HttpHeaders.LINK, previous.toString())
                         .header(HttpHeaders.LINK, last.toString())
                         .header(HttpHeaders.LINK, one.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             return ResponseEntity.notFound().build();
@@ -261,22 +269,19 @@ public class MovieController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             ),
     })
-    ResponseEntity<MappingJacksonValue> getMovie(@PathVariable("id") String id){
+    ResponseEntity<ViewedResponse> getMovie(@PathVariable("id") String id){
         try{
             Optional<Film> movie = movies.get(id);
-            SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.serializeAll();
-            FilterProvider filterProvider = new SimpleFilterProvider().addFilter("movieFilter", filter);
 
             if(movie.isPresent()) {
                 Link self = linkTo(methodOn(MovieController.class).getMovie(id)).withSelfRel();
                 Link all = linkTo(MovieController.class).withRel(relationProvider.getCollectionResourceRelFor(Film.class));
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(movie.get());
-                mappingJacksonValue.setFilters(filterProvider);
+                ViewedResponse body = ResponseView.FILM_FULL.wrap(movie.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
                         .header(HttpHeaders.LINK, all.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             return ResponseEntity.notFound().build();
@@ -285,6 +290,65 @@ public class MovieController {
         }
     }
 
+    //Get similar movies
+    @GetMapping(
+            path = "{id}/similar",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @PreAuthorize("isAuthenticated()")
+    @Operation(
+            operationId = "getSimilarMovies",
+            summary = "Get the movies most similar to a given one",
+            description = "Get the movies that share the most keywords, genres, cast, crew and producers " +
+                    "with the given movie, ranked by Jaccard similarity. Everyone can access the movie repository"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "The similar movies, most similar first",
+                    content = @Content(
+                            mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = SimilarMovie.class))
+                    ),
+                    headers = {
+                            @Header(
+                                    name = "One movie",
+                                    description = "HATEOAS Link to the movie",
+                                    schema = @Schema(title = "One movie", type = "/movies/{id}")
+                            )
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Movie not found or without similar movies",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+    })
+    ResponseEntity<List<SimilarMovie>> getSimilarMovies(
+            @PathVariable("id") String id,
+            @RequestParam(name = "size", defaultValue = "10") int size
+    ) {
+        try {
+            if(size < 1 || size > 100) { return ResponseEntity.badRequest().build(); }
+
+            Optional<List<SimilarMovie>> result = movies.getSimilar(id, size);
+            if(result.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+            Link movie = MOVIE.expand(relationProvider.getItemResourceRelFor(Film.class), id);
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.LINK, movie.toString())
+                    .body(result.get());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     //Create movie
     @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     @PreAuthorize("hasRole('ADMIN')")
@@ -325,7 +389,7 @@ public class MovieController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             )
     })
-    ResponseEntity<MappingJacksonValue> createMovie(
+    ResponseEntity<ViewedResponse> createMovie(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Movie to be created",
                     content = @Content(
@@ -335,17 +399,14 @@ public class MovieController {
             )
             @RequestBody @Valid Film film) {
         try {
-            SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.serializeAll();
-            FilterProvider filterProvider = new SimpleFilterProvider().addFilter("movieFilter", filter);
             if(movies.get(film.getId()).isPresent()){
                 Link self = linkTo(methodOn(MovieController.class).getMovie(film.getId())).withSelfRel();
                 Link all = linkTo(MovieController.class).withRel(relationProvider.getCollectionResourceRelFor(Film.class));
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(movies.get(film.getId()).get());
-                mappingJacksonValue.setFilters(filterProvider);
+                ViewedResponse body = ResponseView.FILM_FULL.wrap(movies.get(film.getId()).get());
                 return ResponseEntity.status(409)
                         .header(HttpHeaders.LINK, self.toString())
                         .header(HttpHeaders.LINK, all.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             Optional<Film> movie = movies.createMovie(film);
@@ -353,13 +414,12 @@ public class MovieController {
             if(movie.isPresent()) {
                 Link self = linkTo(methodOn(MovieController.class).getMovie(movie.get().getId())).withSelfRel();
                 Link all = linkTo(MovieController.class).withRel(relationProvider.getCollectionResourceRelFor(Film.class));
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(movie.get());
-                mappingJacksonValue.setFilters(filterProvider);
+                ViewedResponse body = ResponseView.FILM_FULL.wrap(movie.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
                         .header(HttpHeaders.LINK, all.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             return ResponseEntity.notFound().build();
@@ -455,7 +515,7 @@ public class MovieController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             )
     })
-    ResponseEntity<MappingJacksonValue> updateMovie(
+    ResponseEntity<ViewedResponse> updateMovie(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Film to be updated",
                     content = @Content(
@@ -468,19 +528,16 @@ public class MovieController {
             if(movies.get(film.getId()).isEmpty()){return ResponseEntity.notFound().build();}
 
             Optional<Film> movie = movies.updateMovie(film);
-            SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.serializeAll();
-            FilterProvider filterProvider = new SimpleFilterProvider().addFilter("movieFilter", filter);
 
             if(movie.isPresent()) {
                 Link self = linkTo(methodOn(MovieController.class).getMovie(movie.get().getId())).withSelfRel();
                 Link all = linkTo(MovieController.class).withRel(relationProvider.getCollectionResourceRelFor(Film.class));
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(movie.get());
-                mappingJacksonValue.setFilters(filterProvider);
+                ViewedResponse body = ResponseView.FILM_FULL.wrap(movie.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
                         .header(HttpHeaders.LINK, all.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             return ResponseEntity.notFound().build();
@@ -538,7 +595,7 @@ public class MovieController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             ),
     })
-    ResponseEntity<MappingJacksonValue> modifyFilm(
+    ResponseEntity<ViewedResponse> modifyFilm(
             @PathVariable("id") String id,
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Modifications to be applied",
@@ -554,21 +611,19 @@ public class MovieController {
         try {
             if(movies.get(id).isEmpty()){ return ResponseEntity.notFound().build(); }
             if(updates.isEmpty() || updates.stream().filter(stringObjectMap -> stringObjectMap.values().contains("/id")).count() > 0){ return ResponseEntity.status(422).build(); }
+            if(updates.stream().anyMatch(update -> String.valueOf(update.get("path")).startsWith("/rating"))){ return ResponseEntity.status(422).build(); }
 
             Optional<Film> movie = movies.modifyMovie(id, updates);
-            SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.serializeAll();
-            FilterProvider filterProvider = new SimpleFilterProvider().addFilter("movieFilter", filter);
 
             if(movie.isPresent()) {
                 Link self = linkTo(methodOn(MovieController.class).getMovie(movie.get().getId())).withSelfRel();
                 Link all = linkTo(MovieController.class).withRel(relationProvider.getCollectionResourceRelFor(Film.class));
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(movie.get());
-                mappingJacksonValue.setFilters(filterProvider);
+                ViewedResponse body = ResponseView.FILM_FULL.wrap(movie.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
                         .header(HttpHeaders.LINK, all.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             return ResponseEntity.notFound().build();
@@ -643,44 +698,45 @@ public class MovieController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             )
     })
-    ResponseEntity<Page<Assessment>> getAllAssessments(
+    ResponseEntity<Slice<Assessment>> getAllAssessments(
             @RequestParam(name = "page", defaultValue = "0") int page,
             @RequestParam(name = "size", defaultValue = "20") int size,
             @RequestParam(name = "sort", defaultValue = "") List<String> sort,
-            @PathVariable("id") String id
+            @PathVariable("id") String id,
+            @RequestParam(name = "after", required = false) String after
     ) {
         try{
             if(movies.get(id).isEmpty()){return ResponseEntity.notFound().build();}
-            List<Sort.Order> criteria = sort.stream().map(string -> {
-                if(string.startsWith("+")){
-                    return Sort.Order.asc(string.substring(1));
-                } else if (string.startsWith("-")) {
-                    return Sort.Order.desc(string.substring(1));
-                } else return null;
-            }).filter(Objects::nonNull).collect(Collectors.toList());
+            Sort criteria = SortPolicy.ASSESSMENT.parse(sort);
+
+            //Cursor mode: no total count, the next link carries the cursor
+            if(after != null) {
+                Optional<KeysetSlice<Assessment>> slice = movies.getAssessmentsAfter(after, size, criteria, id);
+                if(slice.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+                Link movie = MOVIE.expand(relationProvider.getItemResourceRelFor(Film.class), id);
+
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                        .header(HttpHeaders.LINK, movie.toString());
+                if(slice.get().hasNext()) {
+                    Link next = LinkTemplate.cursor(IanaLinkRelations.NEXT, slice.get().getNextCursor());
+                    response.header(HttpHeaders.LINK, next.toString());
+                }
+                return response.body(slice.get());
+            }
 
-            Optional<Page<Assessment>> result = movies.getAssessments(page, size, Sort.by(criteria), id);
+            Optional<Page<Assessment>> result = movies.getAssessments(page, size, criteria, id);
 
             if(result.isPresent()) {
                 Page<Assessment> data = result.get();
                 Pageable metadata = data.getPageable();
 
-                Link first = linkTo(
-                        methodOn(MovieController.class).getAllAssessments(metadata.first().getPageNumber(), size, sort, id)
-                ).withRel(IanaLinkRelations.FIRST);
-                Link last = linkTo(
-                        methodOn(MovieController.class).getAllAssessments(data.getTotalPages() - 1, size, sort, id)
-                ).withRel(IanaLinkRelations.LAST);
-                Link next = linkTo(
-                        methodOn(MovieController.class).getAllAssessments(metadata.next().getPageNumber(), size, sort, id)
-                ).withRel(IanaLinkRelations.NEXT);
-                Link previous = linkTo(
-                        methodOn(MovieController.class).getAllAssessments(metadata.previousOrFirst().getPageNumber(), size, sort, id)
-                ).withRel(IanaLinkRelations.PREVIOUS);
+                Link first = LinkTemplate.page(IanaLinkRelations.FIRST, metadata.first().getPageNumber(), size);
+                Link last = LinkTemplate.page(IanaLinkRelations.LAST, data.getTotalPages() - 1, size);
+                Link next = LinkTemplate.page(IanaLinkRelations.NEXT, metadata.next().getPageNumber(), size);
+                Link previous = LinkTemplate.page(IanaLinkRelations.PREVIOUS, metadata.previousOrFirst().getPageNumber(), size);
 
-                Link movie = linkTo(
-                        methodOn(MovieController.class).getMovie(id)
-                ).withRel(relationProvider.getItemResourceRelFor(Film.class));
+                Link movie = MOVIE.expand(relationProvider.getItemResourceRelFor(Film.class), id);
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, movie.toString())
@@ -775,7 +831,7 @@ public class MovieController {
                         methodOn(MovieController.class).getMovie(assessment.getMovie())
                 ).withRel(relationProvider.getItemResourceRelFor(Film.class));
                 Link movieAssessments = linkTo(
-                        methodOn(MovieController.class).getAllAssessments(0, 20, null, assessment.getMovie())
+                        methodOn(MovieController.class).getAllAssessments(0, 20, null, assessment.getMovie(), null)
                 ).withRel(relationProvider.getItemResourceRelFor(Assessment.class));
 
                 return ResponseEntity.ok()
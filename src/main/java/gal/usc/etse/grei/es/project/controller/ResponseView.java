@@ -0,0 +1,50 @@
+package gal.usc.etse.grei.es.project.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import gal.usc.etse.grei.es.project.model.Views;
+
+// Vistas coas que se devolven as películas e usuarios. Cada unha fixa o filtro que se aplica
+// ao serializar; o ObjectWriter correspondente constrúese unha única vez en ViewedResponseConverter.
+public enum ResponseView {
+    // Películas nos listados
+    FILM_SUMMARY("movieFilter", SimpleBeanPropertyFilter.filterOutAllExcept(Views.FILM_SUMMARY)),
+    // Ficha completa dunha película
+    FILM_FULL("movieFilter", SimpleBeanPropertyFilter.serializeAll()),
+    // Usuarios nos listados
+    USER_SUMMARY("userFilter", SimpleBeanPropertyFilter.filterOutAllExcept(Views.USER_SUMMARY)),
+    // Perfil dun usuario, sen o contrasinal
+    USER_PUBLIC("userFilter", SimpleBeanPropertyFilter.serializeAllExcept("password"));
+
+    private final String filterId;
+    private final PropertyFilter filter;
+
+    ResponseView(String filterId, PropertyFilter filter) {
+        this.filterId = filterId;
+        this.filter = filter;
+    }
+
+    public String getFilterId() {
+        return filterId;
+    }
+
+    public PropertyFilter getFilter() {
+        return filter;
+    }
+
+    // Writer co filtro da vista xa incorporado. O fluxo de saída péchao quen o abriu, non Jackson
+    public ObjectWriter writer(ObjectMapper mapper) {
+        SimpleFilterProvider filters = new SimpleFilterProvider()
+                .addFilter(filterId, filter)
+                .setFailOnUnknownId(false);
+        return mapper.writer(filters).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    public ViewedResponse wrap(Object value) {
+        return new ViewedResponse(value, this);
+    }
+}
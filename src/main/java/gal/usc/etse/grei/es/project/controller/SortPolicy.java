@@ -0,0 +1,77 @@
+package gal.usc.etse.grei.es.project.controller;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Traduce o parámetro "sort" dos listados (+campo para ascendente, -campo para descendente) a unha
+// ordenación de Spring. Cada recurso só admite as claves públicas que teñen un índice detrás
+// (ver IndexManager) e unha soa clave por petición; o resto rexéitase cun 400 en lugar de deixar
+// que Mongo ordene en memoria a colección enteira. Á clave pedida engádeselle sempre o _id como
+// desempate, na mesma dirección, para que a paxinación sexa estable e se resolva só co índice.
+// Sen clave non se ordena: as buscas por título devólvense por relevancia, e a paxinación por
+// cursor xa ordena polo _id.
+enum SortPolicy {
+    FILM(fields(
+            "id", "_id",
+            "title", "title",
+            "releaseDate", "releaseDateKey",
+            "rating", "rating.average"
+    )),
+    USER(fields(
+            "email", "_id",
+            "name", "name"
+    )),
+    ASSESSMENT(fields(
+            "id", "_id",
+            "rating", "rating"
+    )),
+    FRIENDSHIP(fields(
+            "id", "_id",
+            "since", "since"
+    ));
+
+    private static final String ID = "_id";
+
+    private final Map<String, String> fields;
+
+    SortPolicy(Map<String, String> fields) {
+        this.fields = fields;
+    }
+
+    Sort parse(List<String> sort) {
+        Sort.Order order = null;
+        for (String string : sort) {
+            String key = string.trim();
+            if (key.isEmpty()) continue;
+
+            // Un "+" sen codificar na URL chega como espazo, polo que sen signo tamén é ascendente
+            Sort.Direction direction = Sort.Direction.ASC;
+            if (key.startsWith("+") || key.startsWith("-")) {
+                if (key.startsWith("-")) direction = Sort.Direction.DESC;
+                key = key.substring(1);
+            }
+
+            String field = fields.get(key);
+            if (field == null)
+                throw new IllegalArgumentException("Unsupported sort key " + key + ", expected one of " + fields.keySet());
+            if (order != null)
+                throw new IllegalArgumentException("Only one sort key is supported");
+            order = new Sort.Order(direction, field);
+        }
+
+        if (order == null) return Sort.unsorted();
+        if (order.getProperty().equals(ID)) return Sort.by(order);
+        return Sort.by(order, new Sort.Order(order.getDirection(), ID));
+    }
+
+    private static Map<String, String> fields(String... pairs) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) fields.put(pairs[i], pairs[i + 1]);
+        return Collections.unmodifiableMap(fields);
+    }
+}
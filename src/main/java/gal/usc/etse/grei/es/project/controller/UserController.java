@@ -1,18 +1,23 @@
 package gal.usc.etse.grei.es.project.controller;
 
-import com.fasterxml.jackson.databind.ser.FilterProvider;
-import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
-import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.github.fge.jsonpatch.JsonPatchException;
 import gal.usc.etse.grei.es.project.configuration.SerializationConfiguration;
 import gal.usc.etse.grei.es.project.model.Assessment;
+import gal.usc.etse.grei.es.project.model.FriendSuggestion;
 import gal.usc.etse.grei.es.project.model.Friendship;
+import gal.usc.etse.grei.es.project.model.FriendshipPath;
+import gal.usc.etse.grei.es.project.model.Recommendation;
 import gal.usc.etse.grei.es.project.model.User;
 import gal.usc.etse.grei.es.project.service.AssessmentService;
+import gal.usc.etse.grei.es.project.service.KeysetSlice;
 import gal.usc.etse.grei.es.project.service.MovieService;
+import gal.usc.etse.grei.es.project.service.PasswordHashingUnavailableException;
+import gal.usc.etse.grei.es.project.service.RankingService;
+import gal.usc.etse.grei.es.project.service.RecommendationService;
 import gal.usc.etse.grei.es.project.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.headers.Header;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -23,6 +28,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.hateoas.IanaLinkRelations;
 import org.springframework.hateoas.Link;
@@ -30,13 +36,13 @@ import org.springframework.hateoas.server.LinkRelationProvider;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
@@ -46,17 +52,24 @@ import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
 @Tag(name = "User API", description = "User related operations")
 @SecurityRequirement(name = "JWT")
 public class UserController {
+    // Rutas resoltas unha única vez ao cargar o controlador
+    private static final LinkTemplate USER = LinkTemplate.of(UserController.class, "getUser");
+
     private final UserService users;
     private final LinkRelationProvider relationProvider;
     private final AssessmentService assessments;
     private final MovieService movies;
+    private final RecommendationService recommendations;
+    private final RankingService ranking;
 
     @Autowired
-    public UserController(UserService users, LinkRelationProvider relationProvider, AssessmentService assessments, MovieService movies) {
+    public UserController(UserService users, LinkRelationProvider relationProvider, AssessmentService assessments, MovieService movies, RecommendationService recommendations, RankingService ranking) {
         this.users = users;
         this.relationProvider = relationProvider;
         this.movies = movies;
         this.assessments = assessments;
+        this.recommendations = recommendations;
+        this.ranking = ranking;
     }
 
     //get all users
@@ -67,7 +80,7 @@ public class UserController {
     @Operation(
             operationId = "getAllUsers",
             summary = "Get all Users",
-            description = "Get all users that conform to optional filters"
+            description = "Get all users that conform to optional filters. sort accepts one of +/-name or email"
     )
     @ApiResponses({
             @ApiResponse(
@@ -121,52 +134,51 @@ public class UserController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             )
     })
-    ResponseEntity<MappingJacksonValue> getAllUsers(
+    ResponseEntity<ViewedResponse> getAllUsers(
             @RequestParam(name = "page", defaultValue = "0") int page,
             @RequestParam(name = "size", defaultValue = "20") int size,
             @RequestParam(name = "sort", defaultValue = "") List<String> sort,
             @RequestParam(name = "email", defaultValue = "") String email,
-            @RequestParam(name = "name", defaultValue = "") String name
+            @RequestParam(name = "name", defaultValue = "") String name,
+            @RequestParam(name = "after", required = false) String after
     ) {
         try{
-            List<Sort.Order> criteria = sort.stream().map(string -> {
-                if(string.startsWith("+")){
-                    return Sort.Order.asc(string.substring(1));
-                } else if (string.startsWith("-")) {
-                    return Sort.Order.desc(string.substring(1));
-                } else return null;
-            }).filter(Objects::nonNull).collect(Collectors.toList());
-
-            Optional<Page<User>> result = users.getAll(page, size, Sort.by(criteria), email, name);
-            SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.filterOutAllExcept("name", "country", "birthday", "picture");
-            FilterProvider filterProvider = new SimpleFilterProvider().addFilter("userFilter", filter);
+            Sort criteria = SortPolicy.USER.parse(sort);
+
+            //Cursor mode: no total count, the next link carries the cursor
+            if(after != null) {
+                Optional<KeysetSlice<User>> slice = users.getAllAfter(after, size, criteria, email, name);
+                if(slice.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+                Link self = LinkTemplate.current(IanaLinkRelations.SELF);
+                Link one = USER.template(relationProvider.getItemResourceRelFor(User.class));
+                ViewedResponse body = ResponseView.USER_SUMMARY.wrap(slice.get());
+
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                        .header(HttpHeaders.LINK, self.toString())
+                        .header(HttpHeaders.LINK, one.toString());
+                if(slice.get().hasNext()) {
+                    Link next = LinkTemplate.cursor(IanaLinkRelations.NEXT, slice.get().getNextCursor());
+                    response.header(HttpHeaders.LINK, next.toString());
+                }
+                return response.body(body);
+            }
+
+            Optional<Page<User>> result = users.getAll(page, size, criteria, email, name);
 
             if(result.isPresent()) {
                 Page<User> data = result.get();
                 Pageable metadata = data.getPageable();
 
-                Link self = linkTo(
-                        methodOn(UserController.class).getAllUsers(page, size, sort, email, name)
-                ).withSelfRel();
-                Link first = linkTo(
-                        methodOn(UserController.class).getAllUsers(metadata.first().getPageNumber(), size, sort, email, name)
-                ).withRel(IanaLinkRelations.FIRST);
-                Link last = linkTo(
-                        methodOn(UserController.class).getAllUsers(data.getTotalPages() - 1, size, sort, email, name)
-                ).withRel(IanaLinkRelations.LAST);
-                Link next = linkTo(
-                        methodOn(UserController.class).getAllUsers(metadata.next().getPageNumber(), size, sort, email, name)
-                ).withRel(IanaLinkRelations.NEXT);
-                Link previous = linkTo(
-                        methodOn(UserController.class).getAllUsers(metadata.previousOrFirst().getPageNumber(), size, sort, email, name)
-                ).withRel(IanaLinkRelations.PREVIOUS);
-
-                Link one = linkTo(
-                        methodOn(UserController.class).getUser(null)
-                ).withRel(relationProvider.getItemResourceRelFor(User.class));
+                Link self = LinkTemplate.page(IanaLinkRelations.SELF, page, size);
+                Link first = LinkTemplate.page(IanaLinkRelations.FIRST, metadata.first().getPageNumber(), size);
+                Link last = LinkTemplate.page(IanaLinkRelations.LAST, data.getTotalPages() - 1, size);
+                Link next = LinkTemplate.page(IanaLinkRelations.NEXT, metadata.next().getPageNumber(), size);
+                Link previous = LinkTemplate.page(IanaLinkRelations.PREVIOUS, metadata.previousOrFirst().getPageNumber(), size);
 
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(result.get());
-                mappingJacksonValue.setFilters(filterProvider);
+                Link one = USER.template(relationProvider.getItemResourceRelFor(User.class));
+
+                ViewedResponse body = ResponseView.USER_SUMMARY.wrap(result.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
@@ -175,7 +187,7 @@ public class UserController {
                         .header(HttpHeaders.LINK, previous.toString())
                         .header(HttpHeaders.LINK, last.toString())
                         .header(HttpHeaders.LINK, one.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             return ResponseEntity.notFound().build();
@@ -233,13 +245,11 @@ public class UserController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             ),
     })
-    ResponseEntity<MappingJacksonValue> getUser(@PathVariable("email") String email) {
+    ResponseEntity<ViewedResponse> getUser(@PathVariable("email") String email) {
         try{
             if (email.equals("tea")){return ResponseEntity.status(418).build();}
             else if(users.get(email).isEmpty()){return ResponseEntity.notFound().build();}
             //Crear o filtro iltros
-            SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.serializeAllExcept("password");
-            FilterProvider filterProvider = new SimpleFilterProvider().addFilter("userFilter", filter);
 
             Optional<User> user = users.get(email);
             if (user.isPresent()) {
@@ -247,13 +257,12 @@ public class UserController {
                 Link all = linkTo(UserController.class).withRel(relationProvider.getCollectionResourceRelFor(User.class));
 
                 //Filtrar a password
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(user.get());
-                mappingJacksonValue.setFilters(filterProvider);
+                ViewedResponse body = ResponseView.USER_PUBLIC.wrap(user.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
                         .header(HttpHeaders.LINK, all.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
             return ResponseEntity.notFound().build();
         }catch(Exception e){
@@ -298,9 +307,14 @@ public class UserController {
                     responseCode = "409",
                     description = "Conflict with existing User",
                     content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Too many password operations in progress, try again later",
+                    content = @Content(schema = @Schema(implementation = Void.class))
             )
     })
-    ResponseEntity<MappingJacksonValue> postUser(
+    ResponseEntity<ViewedResponse> postUser(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "User to be created",
                     content = @Content(
@@ -314,22 +328,21 @@ public class UserController {
             if(users.get(user.getEmail()).isPresent()){ return ResponseEntity.status(409).build(); }
 
             Optional<User> userAux = users.post(user);
-            SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.serializeAllExcept("password");
-            FilterProvider filterProvider = new SimpleFilterProvider().addFilter("userFilter", filter);
 
             if(userAux.isPresent()) {
                 Link self = linkTo(methodOn(UserController.class).getUser(userAux.get().getEmail())).withSelfRel();
                 Link all = linkTo(UserController.class).withRel(relationProvider.getCollectionResourceRelFor(User.class));
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(userAux.get());
-                mappingJacksonValue.setFilters(filterProvider);
+                ViewedResponse body = ResponseView.USER_PUBLIC.wrap(userAux.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
                         .header(HttpHeaders.LINK, all.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             return ResponseEntity.notFound().build();
+        }catch (PasswordHashingUnavailableException e){
+            return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "1").build();
         }catch (Exception e){
             return ResponseEntity.badRequest().build();
         }
@@ -382,7 +395,7 @@ public class UserController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             )
     })
-    ResponseEntity<MappingJacksonValue> updateUser(
+    ResponseEntity<ViewedResponse> updateUser(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "User to be created",
                     content = @Content(
@@ -396,19 +409,16 @@ public class UserController {
             if(users.get(user.getEmail()).isEmpty()){ return ResponseEntity.notFound().build(); }
 
             Optional<User> userAux = users.updateUser(user);
-            SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.serializeAllExcept("password");
-            FilterProvider filterProvider = new SimpleFilterProvider().addFilter("userFilter", filter);
 
             if(userAux.isPresent()) {
                 Link self = linkTo(methodOn(UserController.class).getUser(userAux.get().getEmail())).withSelfRel();
                 Link all = linkTo(UserController.class).withRel(relationProvider.getCollectionResourceRelFor(User.class));
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(userAux.get());
-                mappingJacksonValue.setFilters(filterProvider);
+                ViewedResponse body = ResponseView.USER_PUBLIC.wrap(userAux.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
                         .header(HttpHeaders.LINK, all.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             return ResponseEntity.notFound().build();
@@ -466,7 +476,7 @@ public class UserController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             ),
     })
-    ResponseEntity<MappingJacksonValue> modifyUser(
+    ResponseEntity<ViewedResponse> modifyUser(
             @PathVariable("email") String email,
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Modifications to be applied",
@@ -484,19 +494,16 @@ public class UserController {
             if(updates.isEmpty() || updates.stream().filter(stringObjectMap -> stringObjectMap.values().contains("/email")).count() > 0){ return ResponseEntity.status(422).build(); }
 
             Optional<User> userAux = users.modifyUser(email, updates);
-            SimpleBeanPropertyFilter filterToSend = SimpleBeanPropertyFilter.serializeAllExcept("password");
-            FilterProvider filterProviderToSend = new SimpleFilterProvider().addFilter("userFilter", filterToSend);
 
             if(userAux.isPresent()) {
                 Link self = linkTo(methodOn(UserController.class).getUser(userAux.get().getEmail())).withSelfRel();
                 Link all = linkTo(UserController.class).withRel(relationProvider.getCollectionResourceRelFor(User.class));
-                MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(userAux.get());
-                mappingJacksonValue.setFilters(filterProviderToSend);
+                ViewedResponse body = ResponseView.USER_PUBLIC.wrap(userAux.get());
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
                         .header(HttpHeaders.LINK, all.toString())
-                        .body(mappingJacksonValue);
+                        .body(body);
             }
 
             return ResponseEntity.notFound().build();
@@ -604,44 +611,45 @@ public class UserController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             ),
     })
-    ResponseEntity<Page<Assessment>> getUserAssessments(
+    ResponseEntity<Slice<Assessment>> getUserAssessments(
             @RequestParam(name = "page", defaultValue = "0") int page,
             @RequestParam(name = "size", defaultValue = "20") int size,
             @RequestParam(name = "sort", defaultValue = "") List<String> sort,
-            @PathVariable("email") String email
+            @PathVariable("email") String email,
+            @RequestParam(name = "after", required = false) String after
     ) {
         try {
             if(users.get(email).isEmpty()){return ResponseEntity.notFound().build();}
-            List<Sort.Order> criteria = sort.stream().map(string -> {
-                if(string.startsWith("+")){
-                    return Sort.Order.asc(string.substring(1));
-                } else if (string.startsWith("-")) {
-                    return Sort.Order.desc(string.substring(1));
-                } else return null;
-            }).filter(Objects::nonNull).collect(Collectors.toList());
+            Sort criteria = SortPolicy.ASSESSMENT.parse(sort);
+
+            //Cursor mode: no total count, the next link carries the cursor
+            if(after != null) {
+                Optional<KeysetSlice<Assessment>> slice = users.getAssessmentsAfter(after, size, criteria, email);
+                if(slice.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+                Link user = USER.expand(relationProvider.getItemResourceRelFor(User.class), email);
+
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                        .header(HttpHeaders.LINK, user.toString());
+                if(slice.get().hasNext()) {
+                    Link next = LinkTemplate.cursor(IanaLinkRelations.NEXT, slice.get().getNextCursor());
+                    response.header(HttpHeaders.LINK, next.toString());
+                }
+                return response.body(slice.get());
+            }
 
-            Optional<Page<Assessment>> result = users.getAssessments(page, size, Sort.by(criteria), email);
+            Optional<Page<Assessment>> result = users.getAssessments(page, size, criteria, email);
 
             if(result.isPresent()) {
                 Page<Assessment> data = result.get();
                 Pageable metadata = data.getPageable();
 
-                Link first = linkTo(
-                        methodOn(UserController.class).getUserAssessments(metadata.first().getPageNumber(), size, sort, email)
-                ).withRel(IanaLinkRelations.FIRST);
-                Link last = linkTo(
-                        methodOn(UserController.class).getUserAssessments(data.getTotalPages() - 1, size, sort, email)
-                ).withRel(IanaLinkRelations.LAST);
-                Link next = linkTo(
-                        methodOn(UserController.class).getUserAssessments(metadata.next().getPageNumber(), size, sort, email)
-                ).withRel(IanaLinkRelations.NEXT);
-                Link previous = linkTo(
-                        methodOn(UserController.class).getUserAssessments(metadata.previousOrFirst().getPageNumber(), size, sort, email)
-                ).withRel(IanaLinkRelations.PREVIOUS);
+                Link first = LinkTemplate.page(IanaLinkRelations.FIRST, metadata.first().getPageNumber(), size);
+                Link last = LinkTemplate.page(IanaLinkRelations.LAST, data.getTotalPages() - 1, size);
+                Link next = LinkTemplate.page(IanaLinkRelations.NEXT, metadata.next().getPageNumber(), size);
+                Link previous = LinkTemplate.page(IanaLinkRelations.PREVIOUS, metadata.previousOrFirst().getPageNumber(), size);
 
-                Link user = linkTo(
-                        methodOn(UserController.class).getUser(email)
-                ).withRel(relationProvider.getItemResourceRelFor(User.class));
+                Link user = USER.expand(relationProvider.getItemResourceRelFor(User.class), email);
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, user.toString())
@@ -738,10 +746,10 @@ public class UserController {
             if (assessment.isPresent()) {
                 Link self = linkTo(methodOn(AssessmentController.class).getAssessment(id)).withSelfRel();
                 Link movieAssessments = linkTo(
-                        methodOn(MovieController.class).getAllAssessments(0, 20, null, assessment.get().getMovie())
+                        methodOn(MovieController.class).getAllAssessments(0, 20, null, assessment.get().getMovie(), null)
                 ).withRel(relationProvider.getItemResourceRelFor(Assessment.class));
                 Link userAssessments = linkTo(
-                        methodOn(UserController.class).getUserAssessments(0, 20, null, assessment.get().getUser())
+                        methodOn(UserController.class).getUserAssessments(0, 20, null, assessment.get().getUser(), null)
                 ).withRel(relationProvider.getItemResourceRelFor(Assessment.class));
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
@@ -830,10 +838,10 @@ public class UserController {
             if (assessmentAux.isPresent()) {
                 Link self = linkTo(methodOn(AssessmentController.class).getAssessment(assessmentAux.get().getId())).withSelfRel();
                 Link movieAssessments = linkTo(
-                        methodOn(MovieController.class).getAllAssessments(0, 20, null, assessmentAux.get().getMovie())
+                        methodOn(MovieController.class).getAllAssessments(0, 20, null, assessmentAux.get().getMovie(), null)
                 ).withRel(relationProvider.getItemResourceRelFor(Assessment.class));
                 Link userAssessments = linkTo(
-                        methodOn(UserController.class).getUserAssessments(0, 20, null, assessmentAux.get().getUser())
+                        methodOn(UserController.class).getUserAssessments(0, 20, null, assessmentAux.get().getUser(), null)
                 ).withRel(relationProvider.getItemResourceRelFor(Assessment.class));
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
@@ -896,10 +904,10 @@ public class UserController {
             if (assessment.isPresent()) {
                 assessments.delete(id);
                 Link movieAssessments = linkTo(
-                        methodOn(MovieController.class).getAllAssessments(0, 20, null, assessment.get().getMovie())
+                        methodOn(MovieController.class).getAllAssessments(0, 20, null, assessment.get().getMovie(), null)
                 ).withRel(relationProvider.getItemResourceRelFor(Assessment.class));
                 Link userAssessments = linkTo(
-                        methodOn(UserController.class).getUserAssessments(0, 20, null, assessment.get().getUser())
+                        methodOn(UserController.class).getUserAssessments(0, 20, null, assessment.get().getUser(), null)
                 ).withRel(relationProvider.getItemResourceRelFor(Assessment.class));
                 return ResponseEntity
                         .noContent()
@@ -916,6 +924,143 @@ public class UserController {
 
 
 
+    //----------------------RECOMMENDATIONS------------------
+
+    //Get recommendations
+    @GetMapping(
+            path = "{email}/recommendations",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @PreAuthorize("hasRole('ADMIN') or #email == principal")
+    @Operation(
+            operationId = "getRecommendations",
+            summary = "Gets movie recommendations for an user",
+            description = "Get the movies the user has not rated yet with the highest predicted rating, " +
+                    "computed from the movies most similar to the ones already rated. " +
+                    "Only the user or an admin can see them."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "The recommended movies, best first",
+                    content = @Content(
+                            mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = Recommendation.class))
+                    ),
+                    headers = {
+                            @Header(
+                                    name = "User",
+                                    description = "HATEOAS Link to the user",
+                                    schema = @Schema(title = "One user", type = "/users/{email}")
+                            )
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "No recommendations for the user (unknown user or not enough assessments)",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "The recommendation model is still being built, try again later",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            )
+    })
+    ResponseEntity<List<Recommendation>> getRecommendations(
+            @PathVariable("email") String email,
+            @RequestParam(name = "size", defaultValue = "20") int size
+    ) {
+        try {
+            if(!recommendations.isReady()) { return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "30").build(); }
+            if(size < 1 || size > 100) { return ResponseEntity.badRequest().build(); }
+
+            Optional<List<Recommendation>> result = recommendations.recommend(email, size);
+            if(result.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+            Link user = USER.expand(relationProvider.getItemResourceRelFor(User.class), email);
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.LINK, user.toString())
+                    .body(result.get());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+
+
+    //Get ranking
+    @GetMapping(
+            path = "{email}/ranking",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @PreAuthorize("hasRole('ADMIN') or #email == principal")
+    @Operation(
+            operationId = "getRanking",
+            summary = "Gets a personalised movie ranking for an user",
+            description = "Get the movies the user has not rated yet with the highest predicted rating " +
+                    "according to the matrix factorization model. Only the user or an admin can see it."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "The ranked movies, best first",
+                    content = @Content(
+                            mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = Recommendation.class))
+                    ),
+                    headers = {
+                            @Header(
+                                    name = "User",
+                                    description = "HATEOAS Link to the user",
+                                    schema = @Schema(title = "One user", type = "/users/{email}")
+                            )
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "No ranking for the user (unknown user or not in the last trained model)",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "The ranking model is still being trained, try again later",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            )
+    })
+    ResponseEntity<List<Recommendation>> getRanking(
+            @PathVariable("email") String email,
+            @RequestParam(name = "size", defaultValue = "20") int size
+    ) {
+        try {
+            if(!ranking.isReady()) { return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "30").build(); }
+            if(size < 1 || size > 100) { return ResponseEntity.badRequest().build(); }
+
+            Optional<List<Recommendation>> result = ranking.rank(email, size);
+            if(result.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+            Link user = USER.expand(relationProvider.getItemResourceRelFor(User.class), email);
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.LINK, user.toString())
+                    .body(result.get());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+
+
     //----------------------FRIENDSHIPS------------------
 
     //Get friendships
@@ -971,42 +1116,43 @@ public class UserController {
                     content = @Content(schema = @Schema(implementation = Void.class))
             ),
     })
-    ResponseEntity<Page<Friendship>> getFriendships(
+    ResponseEntity<Slice<Friendship>> getFriendships(
             @RequestParam(name = "page", defaultValue = "0") int page,
             @RequestParam(name = "size", defaultValue = "20") int size,
             @RequestParam(name = "sort", defaultValue = "") List<String> sort,
-            @PathVariable(name = "email") String email
+            @PathVariable(name = "email") String email,
+            @RequestParam(name = "after", required = false) String after
     ) {
         try{
-            List<Sort.Order> criteria = sort.stream().map(string -> {
-                if(string.startsWith("+")){
-                    return Sort.Order.asc(string.substring(1));
-                } else if (string.startsWith("-")) {
-                    return Sort.Order.desc(string.substring(1));
-                } else return null;
-            }).filter(Objects::nonNull).collect(Collectors.toList());
+            Sort criteria = SortPolicy.FRIENDSHIP.parse(sort);
+
+            //Cursor mode: no total count, the next link carries the cursor
+            if(after != null) {
+                Optional<KeysetSlice<Friendship>> slice = users.getFriendshipsAfter(after, size, criteria, email);
+                if(slice.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+                Link self = LinkTemplate.current(IanaLinkRelations.SELF);
+
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                        .header(HttpHeaders.LINK, self.toString());
+                if(slice.get().hasNext()) {
+                    Link next = LinkTemplate.cursor(IanaLinkRelations.NEXT, slice.get().getNextCursor());
+                    response.header(HttpHeaders.LINK, next.toString());
+                }
+                return response.body(slice.get());
+            }
 
-            Optional<Page<Friendship>> result = users.getFriendships(page, size, Sort.by(criteria), email);
+            Optional<Page<Friendship>> result = users.getFriendships(page, size, criteria, email);
 
             if(result.isPresent()) {
                 Page<Friendship> data = result.get();
                 Pageable metadata = data.getPageable();
 
-                Link self = linkTo(
-                        methodOn(UserController.class).getFriendships(page, size, sort, email)
-                ).withSelfRel();
-                Link first = linkTo(
-                        methodOn(UserController.class).getFriendships(metadata.first().getPageNumber(), size, sort, email)
-                ).withRel(IanaLinkRelations.FIRST);
-                Link last = linkTo(
-                        methodOn(UserController.class).getFriendships(data.getTotalPages() - 1, size, sort, email)
-                ).withRel(IanaLinkRelations.LAST);
-                Link next = linkTo(
-                        methodOn(UserController.class).getFriendships(metadata.next().getPageNumber(), size, sort, email)
-                ).withRel(IanaLinkRelations.NEXT);
-                Link previous = linkTo(
-                        methodOn(UserController.class).getFriendships(metadata.previousOrFirst().getPageNumber(), size, sort, email)
-                ).withRel(IanaLinkRelations.PREVIOUS);
+                Link self = LinkTemplate.page(IanaLinkRelations.SELF, page, size);
+                Link first = LinkTemplate.page(IanaLinkRelations.FIRST, metadata.first().getPageNumber(), size);
+                Link last = LinkTemplate.page(IanaLinkRelations.LAST, data.getTotalPages() - 1, size);
+                Link next = LinkTemplate.page(IanaLinkRelations.NEXT, metadata.next().getPageNumber(), size);
+                Link previous = LinkTemplate.page(IanaLinkRelations.PREVIOUS, metadata.previousOrFirst().getPageNumber(), size);
 
                 return ResponseEntity.ok()
                         .header(HttpHeaders.LINK, self.toString())
@@ -1023,6 +1169,203 @@ public class UserController {
         }
     }
 
+    //Get friend suggestions
+    @GetMapping(
+            path = "{email}/friend-suggestions",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @PreAuthorize("#email == principal")
+    @Operation(
+            operationId = "getFriendSuggestions",
+            summary = "Gets friend suggestions for an user",
+            description = "Get the friends of the user's friends that are not yet friends of the user, " +
+                    "ranked by the number of mutual friends. Only the user can see them."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "The suggested users, most mutual friends first",
+                    content = @Content(
+                            mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = FriendSuggestion.class))
+                    ),
+                    headers = {
+                            @Header(
+                                    name = "User",
+                                    description = "HATEOAS Link to the user",
+                                    schema = @Schema(title = "One user", type = "/users/{email}")
+                            )
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "No suggestions for the user",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "The friendship graph is still loading, try again later",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            )
+    })
+    ResponseEntity<List<FriendSuggestion>> getFriendSuggestions(
+            @PathVariable("email") String email,
+            @RequestParam(name = "size", defaultValue = "20") int size
+    ) {
+        try {
+            if(!users.isFriendGraphLoaded()) { return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "1").build(); }
+            if(size < 1 || size > 100) { return ResponseEntity.badRequest().build(); }
+
+            Optional<List<FriendSuggestion>> result = users.getFriendSuggestions(email, size);
+            if(result.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+            Link user = USER.expand(relationProvider.getItemResourceRelFor(User.class), email);
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.LINK, user.toString())
+                    .body(result.get());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    //Get mutual friends
+    @GetMapping(
+            path = "{email}/friends/mutual/{other}",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @PreAuthorize("hasRole('ADMIN') or #email == principal or #other == principal")
+    @Operation(
+            operationId = "getMutualFriends",
+            summary = "Gets the mutual friends of two users",
+            description = "Get the users that are confirmed friends of both users. " +
+                    "Only one of the two users or an admin can see them."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "The emails of the mutual friends",
+                    content = @Content(
+                            mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = String.class, example = "friend@test.com"))
+                    ),
+                    headers = {
+                            @Header(
+                                    name = "User",
+                                    description = "HATEOAS Link to the user",
+                                    schema = @Schema(title = "One user", type = "/users/{email}")
+                            )
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "The users have no mutual friends",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "The friendship graph is still loading, try again later",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            )
+    })
+    ResponseEntity<List<String>> getMutualFriends(
+            @PathVariable("email") String email,
+            @PathVariable("other") String other
+    ) {
+        try {
+            if(!users.isFriendGraphLoaded()) { return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "1").build(); }
+
+            Optional<List<String>> result = users.getMutualFriends(email, other);
+            if(result.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+            Link user = USER.expand(relationProvider.getItemResourceRelFor(User.class), email);
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.LINK, user.toString())
+                    .body(result.get());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    //Get friendship distance
+    @GetMapping(
+            path = "{email}/distance/{other}",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @PreAuthorize("hasRole('ADMIN') or #email == principal")
+    @Operation(
+            operationId = "getFriendshipDistance",
+            summary = "Gets the degrees of separation between two users",
+            description = "Get the shortest chain of confirmed friendships from the user to another one. " +
+                    "Only the user or an admin can see it. The users in between are only listed for admins; " +
+                    "the user only sees which of their friends the chain goes through."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "The shortest path between both users",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = FriendshipPath.class)
+                    ),
+                    headers = {
+                            @Header(
+                                    name = "User",
+                                    description = "HATEOAS Link to the user",
+                                    schema = @Schema(title = "One user", type = "/users/{email}")
+                            )
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "The users are not connected within the maximum distance",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Bad token",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "The friendship graph is still loading, try again later",
+                    content = @Content(schema = @Schema(implementation = Void.class))
+            )
+    })
+    ResponseEntity<FriendshipPath> getFriendshipDistance(
+            @PathVariable("email") String email,
+            @PathVariable("other") String other
+    ) {
+        try {
+            if(!users.isFriendGraphLoaded()) { return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "1").build(); }
+
+            // As amizades dos demais usuarios son privadas: o camiño completo só o ven os administradores
+            boolean admin = AuthorityUtils.authorityListToSet(SecurityContextHolder.getContext().getAuthentication().getAuthorities())
+                    .contains("ROLE_ADMIN");
+            Optional<FriendshipPath> result = users.getPath(email, other, admin);
+            if(result.isEmpty()) { return ResponseEntity.notFound().build(); }
+
+            Link user = USER.expand(relationProvider.getItemResourceRelFor(User.class), email);
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.LINK, user.toString())
+                    .body(result.get());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     //Get friendship
     @GetMapping(
             path = "{email}/friends/{friendEmail}",
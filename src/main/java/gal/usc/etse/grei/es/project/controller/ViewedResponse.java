@@ -0,0 +1,20 @@
+package gal.usc.etse.grei.es.project.controller;
+
+// Corpo dunha resposta xunto coa vista coa que se debe serializar
+public final class ViewedResponse {
+    private final Object value;
+    private final ResponseView view;
+
+    public ViewedResponse(Object value, ResponseView view) {
+        this.value = value;
+        this.view = view;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public ResponseView getView() {
+        return view;
+    }
+}
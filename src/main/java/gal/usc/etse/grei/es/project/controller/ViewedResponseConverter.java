@@ -0,0 +1,45 @@
+package gal.usc.etse.grei.es.project.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Escribe as respostas con vista directamente no fluxo de saída, empregando un ObjectWriter
+// por vista co seu filtro xa incorporado, en lugar de crear un SimpleFilterProvider e un
+// MappingJacksonValue en cada petición.
+public class ViewedResponseConverter extends AbstractHttpMessageConverter<ViewedResponse> {
+    private final Map<ResponseView, ObjectWriter> writers = new EnumMap<>(ResponseView.class);
+
+    public ViewedResponseConverter(ObjectMapper mapper) {
+        super(MediaType.APPLICATION_JSON);
+        for (ResponseView view : ResponseView.values()) writers.put(view, view.writer(mapper));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ViewedResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ViewedResponse readInternal(Class<? extends ViewedResponse> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Viewed responses can only be written", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(ViewedResponse response, HttpOutputMessage outputMessage) throws IOException {
+        writers.get(response.getView()).writeValue(outputMessage.getBody(), response.getValue());
+    }
+}
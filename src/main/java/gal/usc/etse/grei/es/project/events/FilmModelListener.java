@@ -0,0 +1,54 @@
+package gal.usc.etse.grei.es.project.events;
+
+import com.mongodb.client.result.UpdateResult;
+import gal.usc.etse.grei.es.project.model.Date;
+import gal.usc.etse.grei.es.project.model.Film;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@Component
+public class FilmModelListener extends AbstractMongoEventListener<Film> {
+    private static final Logger logger = LoggerFactory.getLogger(FilmModelListener.class);
+
+    private final MongoOperations mongo;
+
+    @Autowired
+    public FilmModelListener(MongoOperations mongo) {
+        this.mongo = mongo;
+    }
+
+    // Recalculamos a data empaquetada cada vez que se garda unha película
+    @Override
+    public void onBeforeConvert(BeforeConvertEvent<Film> event) {
+        Film film = event.getSource();
+        film.setReleaseDateKey(Date.key(film.getReleaseDate()));
+    }
+
+    // As películas gardadas antes de existir o campo complétanse nunha única actualización no servidor
+    @EventListener(ApplicationStartedEvent.class)
+    public void backfill() {
+        Document filter = new Document("releaseDateKey", new Document("$exists", false))
+                .append("releaseDate.year", new Document("$type", "number"));
+        Document packed = new Document("$add", Arrays.asList(
+                new Document("$multiply", Arrays.asList("$releaseDate.year", 10000)),
+                new Document("$multiply", Arrays.asList(new Document("$ifNull", Arrays.asList("$releaseDate.month", 0)), 100)),
+                new Document("$ifNull", Arrays.asList("$releaseDate.day", 0))
+        ));
+
+        UpdateResult result = mongo.getCollection(mongo.getCollectionName(Film.class))
+                .updateMany(filter, Collections.singletonList(new Document("$set", new Document("releaseDateKey", packed))));
+        if (result.getModifiedCount() > 0)
+            logger.info("Filled in the release date key of {} movies", result.getModifiedCount());
+    }
+}
@@ -2,8 +2,12 @@ package gal.usc.etse.grei.es.project.filter;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import gal.usc.etse.grei.es.project.configuration.JwtKeys;
+import gal.usc.etse.grei.es.project.service.PasswordHashingUnavailableException;
 import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -13,10 +17,10 @@ import org.springframework.security.core.userdetails.User;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.security.Key;
 import java.time.Duration;
 import java.util.Date;
 import java.util.List;
@@ -24,14 +28,14 @@ import java.util.stream.Collectors;
 
 public class AuthenticationFilter extends UsernamePasswordAuthenticationFilter {
     private final AuthenticationManager manager;
-    private final Key key;
+    private final JwtKeys keys;
 
     // Establecemos unha duración para os tokens
     private static long TOKEN_DURATION = Duration.ofMinutes(60).toMillis();
 
-    public AuthenticationFilter(AuthenticationManager manager, Key key){
+    public AuthenticationFilter(AuthenticationManager manager, JwtKeys keys){
         this.manager = manager;
-        this.key = key;
+        this.keys = keys;
     }
 
     // Método que tenta autenticar ao usuario a partir da chamada HTTP
@@ -67,6 +71,8 @@ public class AuthenticationFilter extends UsernamePasswordAuthenticationFilter {
 
         // Creamos o token JWT empregando o builder
         JwtBuilder tokenBuilder = Jwts.builder()
+                // Indicamos na cabeceira a clave coa que se asina, para poder verificalo en calquera instancia
+                .setHeaderParam("kid", keys.getActiveKeyId())
                 // Establecemos como "propietario" do token ao usuario que fixo login
                 .setSubject(((User)authResult.getPrincipal()).getUsername())
                 // Establecemos a data de emisión do token
@@ -75,11 +81,23 @@ public class AuthenticationFilter extends UsernamePasswordAuthenticationFilter {
                 .setExpiration(new Date(now + TOKEN_DURATION))
                 // Engadimos un atributo máis ao corpo do token cos roles do usuario
                 .claim("roles", authorities)
-                // Asinamos o token coa nosa clave secreta
-                .signWith(key);
+                // Asinamos o token coa clave activa
+                .signWith(keys.getActiveKey(), SignatureAlgorithm.HS512);
 
         // Engadimos o token á resposta na cabeceira "Authentication"
         response.addHeader("Authentication", String.format("Bearer %s", tokenBuilder.compact()));
     }
 
-}
\ No newline at end of file
+    // Método que se chama cando a autenticación falla
+    @Override
+    protected void unsuccessfulAuthentication(HttpServletRequest request, HttpServletResponse response, AuthenticationException failed) throws IOException, ServletException {
+        // Se non se puido comprobar o contrasinal por estar saturado o servidor devolvemos un 503,
+        // para que o cliente volva tentalo en lugar de pensar que as credenciais son incorrectas
+        if (failed instanceof PasswordHashingUnavailableException) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setStatus(503);
+            return;
+        }
+        super.unsuccessfulAuthentication(request, response, failed);
+    }
+}
@@ -1,7 +1,13 @@
 package gal.usc.etse.grei.es.project.filter;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import gal.usc.etse.grei.es.project.configuration.JwtKeys;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.SignatureException;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -16,16 +22,36 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.security.Key;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class AuthorizationFilter  extends BasicAuthenticationFilter {
-    private final Key key;
+    // Número máximo de tokens verificados que gardamos en memoria
+    private static final long VERIFIED_TOKENS = 10000;
 
-    public AuthorizationFilter(AuthenticationManager manager, Key key){
+    private final JwtKeys keys;
+    private final JwtParser parser;
+    // Tokens xa verificados, indexados polo seu hash. Cada entrada caduca ao mesmo tempo que o token,
+    // así que un token caducado volve pasar polo parser e segue devolvendo o erro 419.
+    // Só gardamos os datos do token: o obxecto de autenticación é mutable e créase en cada petición.
+    private final Cache<String, Verified> verified = Caffeine.newBuilder()
+            .maximumSize(VERIFIED_TOKENS)
+            .expireAfter(new UntilExpiration())
+            .build();
+
+    public AuthorizationFilter(AuthenticationManager manager, JwtKeys keys){
         super(manager);
-        this.key = key;
+        this.keys = keys;
+        // O parser é inmutable e seguro entre fíos, polo que o creamos unha única vez.
+        // A clave de verificación escóllese segundo o kid da cabeceira do token
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(keys.getResolver())
+                .build();
     }
 
     // Método a executar cando se comproba o control de acceso
@@ -59,22 +85,75 @@ public class AuthorizationFilter  extends BasicAuthenticationFilter {
         }
     }
 
-    private UsernamePasswordAuthenticationToken getAuthentication(String token) throws ExpiredJwtException {
-        // Creamos un parser para o token coa clave de firmado da nosa aplicación
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                // Parseamos o corpo do token
-                .parseClaimsJws(token.replace("Bearer", "").trim())
-                .getBody();
+    UsernamePasswordAuthenticationToken getAuthentication(String token) throws ExpiredJwtException {
+        String jwt = token.replace("Bearer", "").trim();
+        String hash = hash(jwt);
+
+        // Se xa verificamos este token non fai falla volver comprobar a firma, sempre que a clave
+        // coa que se asinou siga no conxunto. Se se retirou, o parser rexeitará o token.
+        Verified cached = verified.getIfPresent(hash);
+        if (cached != null && keys.accepts(cached.kid))
+            return new UsernamePasswordAuthenticationToken(cached.user, token, cached.authorities);
+        if (cached != null) verified.invalidate(hash);
+
+        // Parseamos o corpo do token coa clave de firmado da nosa aplicación
+        Jws<Claims> jws = parser.parseClaimsJws(jwt);
+        Claims claims = jws.getBody();
 
         // Obtemos o nome do propietario do token
         String user = claims.getSubject();
+        if (user == null) return null;
 
         // Obtemos o listado de roles do usuario
         List<GrantedAuthority> authorities = AuthorityUtils.commaSeparatedStringToAuthorityList(claims.get("roles").toString());
 
-        // Devolvemos o token interno de Spring, que será engadido no contexto.
-        return user == null ? null : new UsernamePasswordAuthenticationToken(user, token, authorities);
+        // Os tokens sen kid verifícanse coa clave activa nese momento
+        String kid = jws.getHeader().getKeyId() != null ? jws.getHeader().getKeyId() : keys.getActiveKeyId();
+        if (claims.getExpiration() != null)
+            verified.put(hash, new Verified(user, authorities, kid, claims.getExpiration().getTime()));
+
+        // Creamos o token interno de Spring, que será engadido no contexto.
+        return new UsernamePasswordAuthenticationToken(user, token, authorities);
+    }
+
+    private static String hash(String jwt) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(jwt.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Verified {
+        private final String user;
+        private final List<GrantedAuthority> authorities;
+        private final String kid;
+        private final long expiration;
+
+        private Verified(String user, List<GrantedAuthority> authorities, String kid, long expiration) {
+            this.user = user;
+            this.authorities = Collections.unmodifiableList(authorities);
+            this.kid = kid;
+            this.expiration = expiration;
+        }
+    }
+
+    // Cada token verificado permanece na caché ata o instante indicado no seu "exp"
+    private static final class UntilExpiration implements Expiry<String, Verified> {
+        @Override
+        public long expireAfterCreate(String key, Verified value, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.expiration - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Verified value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Verified value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
@@ -3,10 +3,14 @@ package gal.usc.etse.grei.es.project.model;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 import java.util.Objects;
 import java.util.StringJoiner;
 
@@ -22,6 +26,8 @@ public class Assessment {
     @Id
     private long id;
     @NotNull(message = "The rating can not be null")
+    @Min(value = 1, message = "The rating must be between 1 and 10")
+    @Max(value = 10, message = "The rating must be between 1 and 10")
     @Schema(required = true, minimum = "1", maximum = "10", example = "3")
     private Integer rating;
     @NotNull(message = "The rating can not be null")
@@ -32,6 +38,9 @@ public class Assessment {
     private String movieTitle;
     @Schema(example = "I like it")
     private String comment;
+    @LastModifiedDate
+    @Schema(accessMode = Schema.AccessMode.READ_ONLY)
+    private Instant lastModified;
 
     public Assessment() { }
     public Assessment(Integer rating, String user, String movie, String movieTitle, String comment) {
@@ -61,6 +70,9 @@ public class Assessment {
     public String getComment() {
         return comment;
     }
+    public Instant getLastModified() {
+        return lastModified;
+    }
 
     public Assessment setId(long id) {
         this.id = id;
@@ -86,6 +98,10 @@ public class Assessment {
         this.comment = comment;
         return this;
     }
+    public Assessment setLastModified(Instant lastModified) {
+        this.lastModified = lastModified;
+        return this;
+    }
 
     public Assessment updateAssessment(Assessment asses){
         this.rating = asses.rating;
@@ -3,6 +3,8 @@ package gal.usc.etse.grei.es.project.model;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Objects;
 import java.util.StringJoiner;
@@ -69,6 +71,25 @@ public class Date {
         return this;
     }
 
+    // Data empaquetada como yyyymmdd, que ordena igual que a data. As partes que faltan valen 0
+    public static Integer key(Date date) {
+        if (date == null || date.year == null) return null;
+        int month = date.month != null ? date.month : 0;
+        int day = date.day != null ? date.day : 0;
+        return date.year * 10000 + month * 100 + day;
+    }
+
+    // Indica se a data é unha data dd/mm/yyyy real. Un texto mal formado constrúese como 0/0/0
+    public static boolean valid(Date date) {
+        if (date == null || date.day == null || date.month == null || date.year == null) return false;
+        try {
+            LocalDate.of(date.year, date.month, date.day);
+            return date.year > 0;
+        } catch (DateTimeException e) {
+            return false;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
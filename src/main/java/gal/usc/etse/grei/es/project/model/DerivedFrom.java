@@ -0,0 +1,15 @@
+package gal.usc.etse.grei.es.project.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marca un campo que se calcula a partir doutros campos do documento ao gardalo.
+// As escrituras directas en Mongo que cambien algún deses campos teñen que pasar polo
+// documento completo para que o valor derivado se recalcule (ver PatchUtils).
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface DerivedFrom {
+    String[] value();
+}
@@ -1,16 +1,19 @@
 package gal.usc.etse.grei.es.project.model;
 
 import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonPropertyDescription;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.context.annotation.Description;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.web.bind.annotation.ModelAttribute;
 
 import javax.validation.constraints.NotBlank;
+import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
 import java.util.StringJoiner;
@@ -37,6 +40,11 @@ public class Film {
     private Collection collection;
     private List<String> genres;
     private Date releaseDate;
+    // Copia de releaseDate como yyyymmdd para filtrar por rangos e ordenar cun índice.
+    // Mantena o FilmModelListener en cada escritura; non se expón na API
+    @JsonIgnore
+    @DerivedFrom("releaseDate")
+    private Integer releaseDateKey;
     private List<String> keywords;
     private List<Producer> producers;
     private List<Crew> crew;
@@ -49,6 +57,11 @@ public class Film {
     private Integer runtime;
     @Schema(minimum = "1",  example = "999999")
     private Long revenue;
+    @Schema(accessMode = Schema.AccessMode.READ_ONLY)
+    private Rating rating;
+    @LastModifiedDate
+    @Schema(accessMode = Schema.AccessMode.READ_ONLY)
+    private Instant lastModified;
 
     public Film() { }
 
@@ -134,6 +147,15 @@ public class Film {
         return this;
     }
 
+    public Integer getReleaseDateKey() {
+        return releaseDateKey;
+    }
+
+    public Film setReleaseDateKey(Integer releaseDateKey) {
+        this.releaseDateKey = releaseDateKey;
+        return this;
+    }
+
     public List<String> getKeywords() {
         return keywords;
     }
@@ -215,6 +237,24 @@ public class Film {
         return this;
     }
 
+    public Rating getRating() {
+        return rating;
+    }
+
+    public Film setRating(Rating rating) {
+        this.rating = rating;
+        return this;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    public Film setLastModified(Instant lastModified) {
+        this.lastModified = lastModified;
+        return this;
+    }
+
     public Film updateMovie(Film film){
         this.title = film.title;
         this.overview = film.overview;
@@ -244,7 +284,7 @@ public class Film {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, title, overview, tagline, collection, genres, releaseDate, keywords, producers, crew, cast, resources, budget, status, runtime, revenue);
+        return Objects.hash(id, title, overview, tagline, collection, genres, releaseDate, keywords, producers, crew, cast, resources, budget, status, runtime, revenue, rating);
     }
 
     @Override
@@ -266,6 +306,7 @@ public class Film {
                 .add("status=" + status)
                 .add("runtime=" + runtime)
                 .add("revenue=" + revenue)
+                .add("rating=" + rating)
                 .toString();
     }
 }
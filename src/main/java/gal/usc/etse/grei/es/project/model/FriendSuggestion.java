@@ -0,0 +1,77 @@
+package gal.usc.etse.grei.es.project.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@Schema(
+        name = "FriendSuggestion",
+        description = "Friend of a friend suggested to an user, with the number of friends they have in common"
+)
+public class FriendSuggestion {
+    @Schema(example = "test@test.com")
+    private String user;
+    @Schema(example = "Test")
+    private String name;
+    @Schema(example = "3")
+    private int mutualFriends;
+
+    public FriendSuggestion() {
+    }
+
+    public FriendSuggestion(String user, String name, int mutualFriends) {
+        this.user = user;
+        this.name = name;
+        this.mutualFriends = mutualFriends;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public FriendSuggestion setUser(String user) {
+        this.user = user;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FriendSuggestion setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public int getMutualFriends() {
+        return mutualFriends;
+    }
+
+    public FriendSuggestion setMutualFriends(int mutualFriends) {
+        this.mutualFriends = mutualFriends;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FriendSuggestion that = (FriendSuggestion) o;
+        return mutualFriends == that.mutualFriends && Objects.equals(user, that.user) && Objects.equals(name, that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(user, name, mutualFriends);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", FriendSuggestion.class.getSimpleName() + "[", "]")
+                .add("user='" + user + "'")
+                .add("name='" + name + "'")
+                .add("mutualFriends=" + mutualFriends)
+                .toString();
+    }
+}
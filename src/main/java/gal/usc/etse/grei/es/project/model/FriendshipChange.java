@@ -0,0 +1,107 @@
+package gal.usc.etse.grei.es.project.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+// Rexistro dos cambios nas amizades confirmadas, para que cada instancia da aplicación actualice
+// o seu grafo en memoria cos cambios feitos nas demais. O id sae dunha secuencia global, polo que
+// ordena os cambios, e Mongo borra as entradas pasado RETENTION.
+@Document(collection = "friendship_changes")
+public class FriendshipChange {
+    @Transient
+    public static final String SEQUENCE_NAME = "friendship_changes_sequence";
+    @Transient
+    public static final Duration RETENTION = Duration.ofHours(1);
+    @Id
+    private long id;
+    private String user;
+    private String friend;
+    private boolean connected;
+    private Date at;
+
+    public FriendshipChange() {
+    }
+
+    public FriendshipChange(long id, String user, String friend, boolean connected, Date at) {
+        this.id = id;
+        this.user = user;
+        this.friend = friend;
+        this.connected = connected;
+        this.at = at;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public FriendshipChange setId(long id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public FriendshipChange setUser(String user) {
+        this.user = user;
+        return this;
+    }
+
+    public String getFriend() {
+        return friend;
+    }
+
+    public FriendshipChange setFriend(String friend) {
+        this.friend = friend;
+        return this;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public FriendshipChange setConnected(boolean connected) {
+        this.connected = connected;
+        return this;
+    }
+
+    public Date getAt() {
+        return at;
+    }
+
+    public FriendshipChange setAt(Date at) {
+        this.at = at;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FriendshipChange that = (FriendshipChange) o;
+        return id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", FriendshipChange.class.getSimpleName() + "[", "]")
+                .add("id=" + id)
+                .add("user='" + user + "'")
+                .add("friend='" + friend + "'")
+                .add("connected=" + connected)
+                .add("at=" + at)
+                .toString();
+    }
+}
@@ -0,0 +1,108 @@
+package gal.usc.etse.grei.es.project.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(
+        name = "FriendshipPath",
+        description = "Shortest chain of confirmed friendships between two users"
+)
+public class FriendshipPath {
+    @Schema(example = "test@test.com")
+    private String from;
+    @Schema(example = "other@test.com")
+    private String to;
+    @Schema(description = "Number of friendships in the path, 1 if they are friends", example = "2")
+    private int distance;
+    @Schema(description = "Friend of the first user through whom the path goes, absent if they are friends", example = "friend@test.com")
+    private String via;
+    @ArraySchema(schema = @Schema(description = "Users in the path, from the first to the second. Only shown to admins", example = "friend@test.com"))
+    private List<String> path;
+
+    public FriendshipPath() {
+    }
+
+    // Sen o camiño completo: só se indica o primeiro paso, que é un amigo do propio usuario
+    public FriendshipPath(String from, String to, List<String> path, boolean full) {
+        this.from = from;
+        this.to = to;
+        this.distance = path.size() - 1;
+        this.via = path.size() > 2 ? path.get(1) : null;
+        this.path = full ? path : null;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public FriendshipPath setFrom(String from) {
+        this.from = from;
+        return this;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public FriendshipPath setTo(String to) {
+        this.to = to;
+        return this;
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+
+    public FriendshipPath setDistance(int distance) {
+        this.distance = distance;
+        return this;
+    }
+
+    public String getVia() {
+        return via;
+    }
+
+    public FriendshipPath setVia(String via) {
+        this.via = via;
+        return this;
+    }
+
+    public List<String> getPath() {
+        return path;
+    }
+
+    public FriendshipPath setPath(List<String> path) {
+        this.path = path;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FriendshipPath that = (FriendshipPath) o;
+        return distance == that.distance && Objects.equals(from, that.from) && Objects.equals(to, that.to) && Objects.equals(via, that.via) && Objects.equals(path, that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to, distance, via, path);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", FriendshipPath.class.getSimpleName() + "[", "]")
+                .add("from='" + from + "'")
+                .add("to='" + to + "'")
+                .add("distance=" + distance)
+                .add("via='" + via + "'")
+                .add("path=" + path)
+                .toString();
+    }
+}
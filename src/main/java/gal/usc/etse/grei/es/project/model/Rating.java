@@ -0,0 +1,94 @@
+package gal.usc.etse.grei.es.project.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(
+        name = "Rating",
+        description = "Summary of the assessments of a movie, maintained on every assessment change"
+)
+public class Rating {
+    @Schema(example = "12")
+    private long count;
+    @Schema(example = "87")
+    private long sum;
+    @Schema(example = "7.25")
+    private Double average;
+    @Schema(description = "Number of assessments for each score from 1 to 10")
+    private Map<String, Long> histogram = new LinkedHashMap<>();
+
+    public Rating() {
+    }
+
+    public Rating(long count, long sum, Map<String, Long> histogram) {
+        this.count = count;
+        this.sum = sum;
+        this.average = count > 0 ? (double) sum / count : null;
+        this.histogram = histogram;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Rating setCount(long count) {
+        this.count = count;
+        return this;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public Rating setSum(long sum) {
+        this.sum = sum;
+        return this;
+    }
+
+    public Double getAverage() {
+        return average;
+    }
+
+    public Rating setAverage(Double average) {
+        this.average = average;
+        return this;
+    }
+
+    public Map<String, Long> getHistogram() {
+        return histogram;
+    }
+
+    public Rating setHistogram(Map<String, Long> histogram) {
+        this.histogram = histogram;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Rating rating = (Rating) o;
+        return count == rating.count && sum == rating.sum && Objects.equals(average, rating.average) && Objects.equals(histogram, rating.histogram);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(count, sum, average, histogram);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", Rating.class.getSimpleName() + "[", "]")
+                .add("count=" + count)
+                .add("sum=" + sum)
+                .add("average=" + average)
+                .add("histogram=" + histogram)
+                .toString();
+    }
+}
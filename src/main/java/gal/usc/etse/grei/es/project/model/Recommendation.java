@@ -0,0 +1,77 @@
+package gal.usc.etse.grei.es.project.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@Schema(
+        name = "Recommendation",
+        description = "Movie recommended to an user, with the predicted rating"
+)
+public class Recommendation {
+    @Schema(example = "1")
+    private String movie;
+    @Schema(example = "The Shawshank Redemption")
+    private String title;
+    @Schema(description = "Predicted rating, from 1 to 10", example = "8.4")
+    private double score;
+
+    public Recommendation() {
+    }
+
+    public Recommendation(String movie, String title, double score) {
+        this.movie = movie;
+        this.title = title;
+        this.score = score;
+    }
+
+    public String getMovie() {
+        return movie;
+    }
+
+    public Recommendation setMovie(String movie) {
+        this.movie = movie;
+        return this;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Recommendation setTitle(String title) {
+        this.title = title;
+        return this;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public Recommendation setScore(double score) {
+        this.score = score;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Recommendation that = (Recommendation) o;
+        return Double.compare(that.score, score) == 0 && Objects.equals(movie, that.movie) && Objects.equals(title, that.title);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(movie, title, score);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", Recommendation.class.getSimpleName() + "[", "]")
+                .add("movie='" + movie + "'")
+                .add("title='" + title + "'")
+                .add("score=" + score)
+                .toString();
+    }
+}
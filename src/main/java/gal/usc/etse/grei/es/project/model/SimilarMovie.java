@@ -0,0 +1,77 @@
+package gal.usc.etse.grei.es.project.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@Schema(
+        name = "SimilarMovie",
+        description = "Movie similar to another one, with the Jaccard similarity of their keywords, genres, cast, crew and producers"
+)
+public class SimilarMovie {
+    @Schema(example = "1")
+    private String movie;
+    @Schema(example = "The Shawshank Redemption")
+    private String title;
+    @Schema(description = "Jaccard similarity, from 0 to 1", example = "0.42")
+    private double similarity;
+
+    public SimilarMovie() {
+    }
+
+    public SimilarMovie(String movie, String title, double similarity) {
+        this.movie = movie;
+        this.title = title;
+        this.similarity = similarity;
+    }
+
+    public String getMovie() {
+        return movie;
+    }
+
+    public SimilarMovie setMovie(String movie) {
+        this.movie = movie;
+        return this;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public SimilarMovie setTitle(String title) {
+        this.title = title;
+        return this;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    public SimilarMovie setSimilarity(double similarity) {
+        this.similarity = similarity;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SimilarMovie that = (SimilarMovie) o;
+        return Double.compare(that.similarity, similarity) == 0 && Objects.equals(movie, that.movie) && Objects.equals(title, that.title);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(movie, title, similarity);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", SimilarMovie.class.getSimpleName() + "[", "]")
+                .add("movie='" + movie + "'")
+                .add("title='" + title + "'")
+                .add("similarity=" + similarity)
+                .toString();
+    }
+}
@@ -5,10 +5,12 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
+import java.time.Instant;
 import java.util.List;
 
 @Document(collection = "users")
@@ -36,6 +38,9 @@ public class User {
     private String password;
     @Schema(name = "Roles", allowableValues = {"ROLE_ADMIN","ROLE_USER"})
     private List<String> roles;
+    @LastModifiedDate
+    @Schema(accessMode = Schema.AccessMode.READ_ONLY)
+    private Instant lastModified;
 
     public User() {}
 
@@ -70,6 +75,9 @@ public class User {
     public List<String> getRoles() {
         return roles;
     }
+    public Instant getLastModified() {
+        return lastModified;
+    }
 
     public User setEmail(String email) {
         this.email = email;
@@ -99,6 +107,10 @@ public class User {
         this.roles = roles;
         return this;
     }
+    public User setLastModified(Instant lastModified) {
+        this.lastModified = lastModified;
+        return this;
+    }
 
     public User updateUser(User user){
         this.name = user.name;
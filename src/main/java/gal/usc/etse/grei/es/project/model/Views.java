@@ -0,0 +1,11 @@
+package gal.usc.etse.grei.es.project.model;
+
+// Campos que forman parte de cada vista resumida dos modelos.
+// Empréganse tanto para proxectar as consultas en Mongo como para filtrar a serialización,
+// de forma que os campos que non se van devolver nunca saen da base de datos.
+public final class Views {
+    public static final String[] FILM_SUMMARY = {"id", "title", "overview", "genres", "releaseDate", "resources", "rating"};
+    public static final String[] USER_SUMMARY = {"name", "country", "birthday", "picture"};
+
+    private Views() {}
+}
@@ -1,6 +1,5 @@
 package gal.usc.etse.grei.es.project.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatchException;
 import gal.usc.etse.grei.es.project.model.Assessment;
 import gal.usc.etse.grei.es.project.model.Film;
@@ -10,8 +9,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -19,10 +21,18 @@ import java.util.Optional;
 @Service
 public class AssessmentService {
     private final AssessmentRepository assessments;
+    private final RatingService ratings;
+    private final PatchUtils patch;
+    private final MongoOperations mongo;
+    private final RecommendationService recommendations;
 
     @Autowired
-    public AssessmentService(AssessmentRepository assessments) {
+    public AssessmentService(AssessmentRepository assessments, RatingService ratings, PatchUtils patch, MongoOperations mongo, RecommendationService recommendations) {
         this.assessments = assessments;
+        this.ratings = ratings;
+        this.patch = patch;
+        this.mongo = mongo;
+        this.recommendations = recommendations;
     }
 
     //Get all
@@ -36,6 +46,11 @@ public class AssessmentService {
         else return Optional.of(result);
     }
 
+    //Export all
+    public CloseableIterator<Assessment> stream(Instant modifiedSince) {
+        return mongo.stream(ExportQuery.modifiedSince(modifiedSince), Assessment.class);
+    }
+
     //Get one
     public Optional<Assessment> get(long id) {
         return assessments.findById(id+"");
@@ -43,25 +58,41 @@ public class AssessmentService {
 
     //Create one
     public Optional<Assessment> post(Assessment assessment) {
-        return Optional.of(assessments.insert(assessment));
+        Assessment created = assessments.insert(assessment);
+        ratings.add(created.getMovie(), created.getRating());
+        recommendations.changed(created.getUser());
+        return Optional.of(created);
     }
 
     //Update one
     public Optional<Assessment> updateAssessment(Assessment asses){
         Assessment assesEdit = assessments.findById(asses.getId()+"").get();
+        Assessment previous = new Assessment().setMovie(assesEdit.getMovie()).setRating(assesEdit.getRating()).setUser(assesEdit.getUser());
         assesEdit.updateAssessment(asses);
-        return Optional.of(this.assessments.save(assesEdit));
+        Assessment saved = this.assessments.save(assesEdit);
+        ratings.replace(previous, saved);
+        recommendations.changed(previous.getUser());
+        recommendations.changed(saved.getUser());
+        return Optional.of(saved);
     }
 
     //Modify one
     public Optional<Assessment> modifyAssessment(long id, List<Map<String, Object>> updates) throws JsonPatchException {
         Assessment assessmentEdit = assessments.findById(id+"").get();
-        PatchUtils aux = new PatchUtils(new ObjectMapper());
-        return Optional.of(this.assessments.save(aux.patch(assessmentEdit, updates)));
+        String user = assessmentEdit.getUser();
+        Assessment saved = this.assessments.save(patch.patch(assessmentEdit, updates));
+        ratings.replace(assessmentEdit, saved);
+        recommendations.changed(user);
+        recommendations.changed(saved.getUser());
+        return Optional.of(saved);
     }
 
     //Delete one
     public void delete(long id) {
-        assessments.deleteById(id+"");
+        assessments.findById(id+"").ifPresent(assessment -> {
+            assessments.deleteById(id+"");
+            ratings.remove(assessment.getMovie(), assessment.getRating());
+            recommendations.changed(assessment.getUser());
+        });
     }
 }
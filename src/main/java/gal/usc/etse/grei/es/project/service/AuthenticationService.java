@@ -1,29 +1,73 @@
 package gal.usc.etse.grei.es.project.service;
 
+import gal.usc.etse.grei.es.project.configuration.CacheConfiguration;
 import gal.usc.etse.grei.es.project.model.User;
-import gal.usc.etse.grei.es.project.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
-public class AuthenticationService  implements UserDetailsService {
-    private final UserRepository users;
+public class AuthenticationService  implements UserDetailsService, UserDetailsPasswordService {
+    private final MongoOperations mongo;
+    private final Cache credentials;
 
     @Autowired
-    public AuthenticationService(UserRepository users) {
-        this.users = users;
+    public AuthenticationService(MongoOperations mongo, CacheManager caches) {
+        this.mongo = mongo;
+        this.credentials = caches.getCache(CacheConfiguration.CREDENTIALS);
     }
 
     //O método lanzará unha excepción se o usuario non se atopa na base de datos
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        // Buscamos o usuario correspondente ao id proporcionado na base de datos,
-        // e lanzamos a excepción no caso de que non exista
-        User user = users.findById(username).orElseThrow(() -> new UsernameNotFoundException(username));
+        UserDetails cached = credentials.get(username, UserDetails.class);
+        if (cached == null) {
+            cached = load(username);
+            credentials.put(username, cached);
+        }
+
+        // Devolvemos sempre unha copia: Spring borra o contrasinal do obxecto tras autenticar,
+        // e non queremos que iso afecte á copia gardada na caché
+        return org.springframework.security.core.userdetails.User.withUserDetails(cached).build();
+    }
+
+    // Spring chama a este método tras un inicio de sesión correcto cando o hash gardado
+    // se calculou cun custo distinto do configurado, co novo hash xa calculado.
+    // Só substituímos o hash se segue sendo o co que se autenticou: se o contrasinal cambiou
+    // mentres tanto non o desfacemos, e tampouco tocamos o resto do documento do usuario
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfiguration.USERS, key = "#user.username"),
+            @CacheEvict(cacheNames = CacheConfiguration.CREDENTIALS, key = "#user.username")
+    })
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        Query unchanged = new Query(Criteria.where("_id").is(user.getUsername()).and("password").is(user.getPassword()));
+        mongo.updateFirst(unchanged, new Update().set("password", newPassword).currentDate("lastModified"), User.class);
+
+        return org.springframework.security.core.userdetails.User.withUserDetails(user)
+                .password(newPassword)
+                .build();
+    }
+
+    private UserDetails load(String username) {
+        // Buscamos o usuario correspondente ao id proporcionado na base de datos, lendo só
+        // os campos necesarios para autenticalo, e lanzamos a excepción no caso de que non exista
+        Query query = new Query(Criteria.where("_id").is(username));
+        query.fields().include("password").include("roles");
+        User user = mongo.findOne(query, User.class);
+        if (user == null) throw new UsernameNotFoundException(username);
 
         // Creamos o usuario de spring empregando o builder
         return org.springframework.security.core.userdetails.User.builder()
@@ -0,0 +1,101 @@
+package gal.usc.etse.grei.es.project.service;
+
+import gal.usc.etse.grei.es.project.configuration.CacheConfiguration;
+import gal.usc.etse.grei.es.project.model.Film;
+import gal.usc.etse.grei.es.project.model.User;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// As cachés de películas e usuarios só se baleiran na instancia que fai a escritura. Para que as
+// demais non sirvan datos vellos ata que caduquen, lemos periodicamente os ids modificados
+// (lastModified) e retirámolos da caché local. Os borrados non deixan rastro: cando cambia
+// o número de documentos comprobamos que as entradas da caché seguen existindo.
+@Service
+public class CacheRefresher {
+    // Marxe para os documentos gardados por instancias co reloxo atrasado
+    private static final Duration SKEW = Duration.ofSeconds(30);
+
+    private final MongoOperations mongo;
+    private final List<Target> targets;
+    private Instant polledAt = Instant.now();
+
+    @Autowired
+    public CacheRefresher(MongoOperations mongo, CacheManager caches) {
+        this.mongo = mongo;
+        this.targets = Arrays.asList(
+                new Target(Film.class, caches.getCache(CacheConfiguration.FILMS)),
+                // Un cambio de contrasinal ou de roles tamén ten que chegar ás credenciais
+                new Target(User.class, caches.getCache(CacheConfiguration.USERS), caches.getCache(CacheConfiguration.CREDENTIALS))
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${cache.refresh:5000}", initialDelayString = "${cache.refresh:5000}")
+    public synchronized void refresh() {
+        Instant started = Instant.now();
+        targets.forEach(target -> {
+            evictModified(target);
+            evictDeleted(target);
+        });
+        polledAt = started;
+    }
+
+    private void evictModified(Target target) {
+        Query query = new Query(where("lastModified").gte(polledAt.minus(SKEW)));
+        query.fields().include("_id");
+        for (Document document : mongo.find(query, Document.class, mongo.getCollectionName(target.type)))
+            target.evict(String.valueOf(document.get("_id")));
+    }
+
+    private void evictDeleted(Target target) {
+        long count = mongo.estimatedCount(target.type);
+        if (count == target.count) return;
+        target.count = count;
+
+        Set<Object> cached = target.keys();
+        if (cached.isEmpty()) return;
+
+        Query query = new Query(where("_id").in(cached));
+        query.fields().include("_id");
+        for (Document document : mongo.find(query, Document.class, mongo.getCollectionName(target.type)))
+            cached.remove(String.valueOf(document.get("_id")));
+        cached.forEach(target::evict);
+    }
+
+    private static final class Target {
+        private final Class<?> type;
+        private final List<Cache> caches;
+        private long count = -1;
+
+        private Target(Class<?> type, Cache... caches) {
+            this.type = type;
+            this.caches = Arrays.asList(caches);
+        }
+
+        private void evict(Object id) {
+            caches.forEach(cache -> cache.evict(id));
+        }
+
+        // Ids gardados en calquera das cachés deste tipo de documento
+        private Set<Object> keys() {
+            Set<Object> keys = new HashSet<>();
+            for (Cache cache : caches) {
+                Object store = cache.getNativeCache();
+                if (store instanceof com.github.benmanes.caffeine.cache.Cache)
+                    keys.addAll(((com.github.benmanes.caffeine.cache.Cache<?, ?>) store).asMap().keySet());
+            }
+            return keys;
+        }
+    }
+}
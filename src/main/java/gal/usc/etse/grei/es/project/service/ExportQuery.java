@@ -0,0 +1,23 @@
+package gal.usc.etse.grei.es.project.service;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+
+// Consulta base das exportacións: percorre a colección por _id, ou por data de modificación se só
+// se piden os documentos modificados dende unha data, lendo do cursor en lotes para non cargar
+// a colección en memoria. Ambas ordes están cubertas por índices (ver IndexManager).
+final class ExportQuery {
+    private static final int BATCH_SIZE = 500;
+
+    private ExportQuery() { }
+
+    static Query modifiedSince(Instant since) {
+        Query query = since != null
+                ? new Query(Criteria.where("lastModified").gte(since)).with(Sort.by("lastModified", "_id"))
+                : new Query().with(Sort.by("_id"));
+        return query.cursorBatchSize(BATCH_SIZE);
+    }
+}
@@ -0,0 +1,285 @@
+package gal.usc.etse.grei.es.project.service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.IntConsumer;
+
+// Factores latentes de usuarios e películas, adestrados con mínimos cadrados alternos (ALS):
+// fixados os das películas, os de cada usuario son a solución dun sistema rank x rank, e
+// viceversa. Cada fila resólvese por separado, así que cada medio paso é paralelo sen
+// sincronización. A valoración estimada é a media global máis o produto escalar dos factores.
+final class FactorModel {
+    private static final int MAGIC = 0x414C5331;
+    private static final int VERSION = 1;
+    private static final int LEAF = 64;
+
+    final int rank;
+    final float mean;
+    final RatingMatrix.Dictionary users;
+    final RatingMatrix.Dictionary items;
+    final float[] userFactors;
+    final float[] itemFactors;
+    final double rmse;
+
+    private FactorModel(int rank, float mean, RatingMatrix.Dictionary users, RatingMatrix.Dictionary items,
+                        float[] userFactors, float[] itemFactors, double rmse) {
+        this.rank = rank;
+        this.mean = mean;
+        this.users = users;
+        this.items = items;
+        this.userFactors = userFactors;
+        this.itemFactors = itemFactors;
+        this.rmse = rmse;
+    }
+
+    static FactorModel train(RatingMatrix matrix, Settings settings, ForkJoinPool pool) {
+        int rank = settings.rank;
+        int userCount = matrix.userCount();
+        int itemCount = matrix.itemCount();
+
+        long sum = 0;
+        for (byte rating : matrix.userRatings) sum += rating;
+        float mean = matrix.size() > 0 ? (float) sum / matrix.size() : 0;
+
+        float[] userFactors = new float[userCount * rank];
+        float[] itemFactors = new float[itemCount * rank];
+        Random random = new Random(settings.seed);
+        for (int i = 0; i < itemFactors.length; i++) itemFactors[i] = (float) (random.nextGaussian() * 0.1);
+
+        Solvers solvers = new Solvers(rank);
+        for (int iteration = 0; iteration < settings.iterations; iteration++) {
+            parallel(pool, userCount, solvers, (u, solver) -> solver.solve(
+                    matrix.userOffsets[u], matrix.userOffsets[u + 1],
+                    p -> matrix.userItems[p], p -> matrix.userRatings[p],
+                    mean, settings.lambda, itemFactors, userFactors, u));
+            parallel(pool, itemCount, solvers, (i, solver) -> solver.solve(
+                    matrix.itemOffsets[i], matrix.itemOffsets[i + 1],
+                    p -> matrix.itemUsers[p], p -> Math.round(matrix.itemValues[p] + matrix.userMeans[matrix.itemUsers[p]]),
+                    mean, settings.lambda, userFactors, itemFactors, i));
+        }
+
+        DoubleAdder squared = new DoubleAdder();
+        parallel(pool, userCount, u -> {
+            double error = 0;
+            for (int p = matrix.userOffsets[u]; p < matrix.userOffsets[u + 1]; p++) {
+                double difference = matrix.userRatings[p] - mean - dot(userFactors, u, itemFactors, matrix.userItems[p], rank);
+                error += difference * difference;
+            }
+            squared.add(error);
+        });
+        double rmse = matrix.size() > 0 ? Math.sqrt(squared.sum() / matrix.size()) : 0;
+
+        return new FactorModel(rank, mean, matrix.users, matrix.items, userFactors, itemFactors, rmse);
+    }
+
+    // Vector do usuario, ou null se non estaba no adestramento
+    float[] user(String name) {
+        Integer user = users.find(name);
+        if (user == null) return null;
+        float[] vector = new float[rank];
+        System.arraycopy(userFactors, user * rank, vector, 0, rank);
+        return vector;
+    }
+
+    float predict(float[] user, int item) {
+        float result = mean;
+        for (int f = 0; f < rank; f++) result += user[f] * itemFactors[item * rank + f];
+        return result;
+    }
+
+    // Gárdase nun ficheiro temporal e móvese ao final, para non deixar nunca un modelo a medias
+    void write(Path file) throws IOException {
+        if (file.toAbsolutePath().getParent() != null) Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rank);
+            out.writeFloat(mean);
+            out.writeDouble(rmse);
+            writeNames(out, users);
+            writeNames(out, items);
+            for (float value : userFactors) out.writeFloat(value);
+            for (float value : itemFactors) out.writeFloat(value);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static FactorModel read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Unsupported model file " + file);
+            int rank = in.readInt();
+            float mean = in.readFloat();
+            double rmse = in.readDouble();
+            RatingMatrix.Dictionary users = readNames(in);
+            RatingMatrix.Dictionary items = readNames(in);
+            float[] userFactors = new float[users.size() * rank];
+            float[] itemFactors = new float[items.size() * rank];
+            for (int i = 0; i < userFactors.length; i++) userFactors[i] = in.readFloat();
+            for (int i = 0; i < itemFactors.length; i++) itemFactors[i] = in.readFloat();
+            return new FactorModel(rank, mean, users, items, userFactors, itemFactors, rmse);
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, RatingMatrix.Dictionary names) throws IOException {
+        out.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++) out.writeUTF(names.name(i));
+    }
+
+    private static RatingMatrix.Dictionary readNames(DataInputStream in) throws IOException {
+        RatingMatrix.Dictionary names = new RatingMatrix.Dictionary();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) names.id(in.readUTF());
+        return names;
+    }
+
+    private static float dot(float[] a, int row, float[] b, int column, int rank) {
+        float sum = 0;
+        for (int f = 0; f < rank; f++) sum += a[row * rank + f] * b[column * rank + f];
+        return sum;
+    }
+
+    private static void parallel(ForkJoinPool pool, int count, IntConsumer body) {
+        pool.invoke(new Rows(0, count, null, (row, solver) -> body.accept(row)));
+    }
+
+    private static void parallel(ForkJoinPool pool, int count, Solvers solvers, Row body) {
+        pool.invoke(new Rows(0, count, solvers, body));
+    }
+
+    static final class Settings {
+        final int rank;
+        final int iterations;
+        final float lambda;
+        final long seed;
+
+        Settings(int rank, int iterations, float lambda, long seed) {
+            this.rank = rank;
+            this.iterations = iterations;
+            this.lambda = lambda;
+            this.seed = seed;
+        }
+    }
+
+    private interface Row {
+        void compute(int row, Solver solver);
+    }
+
+    // Cada folla colle un solver e resolve con el todas as súas filas
+    private static final class Rows extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final Solvers solvers;
+        private final Row body;
+
+        private Rows(int from, int to, Solvers solvers, Row body) {
+            this.from = from;
+            this.to = to;
+            this.solvers = solvers;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF) {
+                Solver solver = solvers != null ? solvers.borrow() : null;
+                for (int row = from; row < to; row++) body.compute(row, solver);
+                if (solver != null) solvers.release(solver);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Rows(from, middle, solvers, body), new Rows(middle, to, solvers, body));
+        }
+    }
+
+    // Solvers libres dun adestramento. Non os gardamos por fío: os fíos do pool viven moito máis
+    // ca o adestramento e reterían as matrices ata o seguinte
+    private static final class Solvers {
+        private final int rank;
+        private final ConcurrentLinkedQueue<Solver> free = new ConcurrentLinkedQueue<>();
+
+        private Solvers(int rank) {
+            this.rank = rank;
+        }
+
+        private Solver borrow() {
+            Solver solver = free.poll();
+            return solver != null ? solver : new Solver(rank);
+        }
+
+        private void release(Solver solver) {
+            free.offer(solver);
+        }
+    }
+
+    private interface Column {
+        int at(int position);
+    }
+
+    // Resolve (Qᵀ Q + λ n I) x = Qᵀ (r - media) por Cholesky, reutilizando as súas matrices entre filas.
+    // A regularización crece co número de valoracións da fila (ALS-WR)
+    private static final class Solver {
+        private final int rank;
+        private final double[] a;
+        private final double[] b;
+
+        private Solver(int rank) {
+            this.rank = rank;
+            this.a = new double[rank * rank];
+            this.b = new double[rank];
+        }
+
+        private void solve(int from, int to, Column columns, Column ratings, float mean, float lambda,
+                           float[] fixed, float[] target, int row) {
+            int offset = row * rank;
+            int count = to - from;
+            if (count == 0) {
+                Arrays.fill(target, offset, offset + rank, 0);
+                return;
+            }
+
+            Arrays.fill(a, 0);
+            Arrays.fill(b, 0);
+            for (int p = from; p < to; p++) {
+                int other = columns.at(p) * rank;
+                double residual = ratings.at(p) - mean;
+                for (int i = 0; i < rank; i++) {
+                    double value = fixed[other + i];
+                    b[i] += residual * value;
+                    for (int j = 0; j <= i; j++) a[i * rank + j] += value * fixed[other + j];
+                }
+            }
+            for (int i = 0; i < rank; i++) a[i * rank + i] += lambda * count;
+
+            // Factorización L Lᵀ no triángulo inferior
+            for (int i = 0; i < rank; i++) {
+                for (int j = 0; j <= i; j++) {
+                    double sum = a[i * rank + j];
+                    for (int k = 0; k < j; k++) sum -= a[i * rank + k] * a[j * rank + k];
+                    a[i * rank + j] = i == j ? Math.sqrt(Math.max(sum, 1e-12)) : sum / a[j * rank + j];
+                }
+            }
+            // L y = b e Lᵀ x = y
+            for (int i = 0; i < rank; i++) {
+                double sum = b[i];
+                for (int k = 0; k < i; k++) sum -= a[i * rank + k] * b[k];
+                b[i] = sum / a[i * rank + i];
+            }
+            for (int i = rank - 1; i >= 0; i--) {
+                double sum = b[i];
+                for (int k = i + 1; k < rank; k++) sum -= a[k * rank + i] * b[k];
+                b[i] = sum / a[i * rank + i];
+            }
+            for (int i = 0; i < rank; i++) target[offset + i] = (float) b[i];
+        }
+    }
+}
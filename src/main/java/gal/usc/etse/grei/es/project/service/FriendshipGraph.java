@@ -0,0 +1,598 @@
+package gal.usc.etse.grei.es.project.service;
+
+import gal.usc.etse.grei.es.project.model.Friendship;
+import gal.usc.etse.grei.es.project.model.FriendshipChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Grafo en memoria das amizades confirmadas, para resolver a comprobación de permisos
+// areFriends e as suxestións de amizade sen ir a Mongo en cada petición. Cada usuario
+// tradúcese a un enteiro e os seus amigos están ordenados, polo que a consulta é unha busca binaria.
+// Os cambios de cada instancia publícanse en friendship_changes e as demais aplícanos en poucos
+// segundos; a recarga completa periódica só corrixe o que se puidese perder polo camiño.
+@Service
+public class FriendshipGraph {
+    private static final Logger logger = LoggerFactory.getLogger(FriendshipGraph.class);
+    private static final int[] NONE = new int[0];
+    // Marxe para os cambios gardados tarde ou por instancias co reloxo atrasado
+    private static final Duration SKEW = Duration.ofMinutes(1);
+
+    private final MongoOperations mongo;
+    private final SequenceGeneratorService sequences;
+    private final int fanOut;
+    private final int maxVisits;
+    private final int maxDepth;
+    private final int maxPathVisits;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Graph graph = new Graph();
+    // Cambios feitos mentres se recarga o grafo, para aplicalos tamén sobre o novo
+    private List<Change> journal;
+    private volatile boolean loaded = false;
+    // Momento no que comezou a última lectura do rexistro de cambios
+    private volatile Date polledAt;
+
+    @Autowired
+    public FriendshipGraph(
+            MongoOperations mongo,
+            SequenceGeneratorService sequences,
+            @Value("${friendships.suggestions.fan-out:1000}") int fanOut,
+            @Value("${friendships.suggestions.max-visits:200000}") int maxVisits,
+            @Value("${friendships.distance.max-depth:6}") int maxDepth,
+            @Value("${friendships.distance.max-visits:1000000}") int maxPathVisits
+    ) {
+        this.mongo = mongo;
+        this.sequences = sequences;
+        this.fanOut = fanOut;
+        this.maxVisits = maxVisits;
+        this.maxDepth = maxDepth;
+        this.maxPathVisits = maxPathVisits;
+    }
+
+    // Cargamos o grafo ao arrancar e recargámolo periodicamente por se se perdeu
+    // algún cambio publicado por outra instancia (ver poll)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${friendships.graph.reload:600000}", initialDelayString = "${friendships.graph.reload:600000}")
+    public void reload() {
+        Date started = new Date();
+        lock.writeLock().lock();
+        try {
+            journal = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Graph fresh;
+        Query query = new Query(where("confirmed").is(true));
+        query.fields().include("user").include("friend");
+        try (CloseableIterator<Friendship> friendships = mongo.stream(query, Friendship.class)) {
+            fresh = Graph.load(friendships);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                journal = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Change change : journal) change.apply(fresh);
+            journal = null;
+            graph = fresh;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (polledAt == null) polledAt = started;
+    }
+
+    // Aplica os cambios publicados polas demais instancias. Relemos sempre os do último minuto e
+    // aplicámolos en orde de secuencia, así que para cada parella queda o último cambio aínda que
+    // algún se gardase despois de que lésemos un posterior
+    @Scheduled(fixedDelayString = "${friendships.graph.poll:2000}", initialDelayString = "${friendships.graph.poll:2000}")
+    public void poll() {
+        if (polledAt == null) return;
+        Date started = new Date();
+
+        Query query = new Query(where("at").gte(new Date(polledAt.getTime() - SKEW.toMillis())));
+        List<FriendshipChange> changes = new ArrayList<>(mongo.find(query, FriendshipChange.class));
+        changes.sort(Comparator.comparingLong(FriendshipChange::getId));
+
+        lock.writeLock().lock();
+        try {
+            for (FriendshipChange change : changes) {
+                if (graph.connected(change.getUser(), change.getFriend()) == change.isConnected()) continue;
+                Change pending = new Change(change.getUser(), change.getFriend(), change.isConnected());
+                pending.apply(graph);
+                if (journal != null) journal.add(pending);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        polledAt = started;
+    }
+
+    // Mentres non se complete a primeira carga non podemos responder
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean areFriends(String user, String friend) {
+        lock.readLock().lock();
+        try {
+            return graph.connected(user, friend);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Suggest friends
+    public LinkedHashMap<String, Integer> suggestions(String user, Set<String> exclude, int size) {
+        lock.readLock().lock();
+        try {
+            return graph.suggestions(user, exclude, size, fanOut, maxVisits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Mutual friends
+    public List<String> mutual(String user, String other) {
+        lock.readLock().lock();
+        try {
+            return graph.mutual(user, other);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Shortest path
+    public List<String> path(String user, String other) {
+        lock.readLock().lock();
+        try {
+            return graph.path(user, other, maxDepth, maxPathVisits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Add friendship
+    public void connect(String user, String friend) {
+        record(new Change(user, friend, true));
+        publish(new Change(user, friend, true));
+    }
+
+    //Remove friendship
+    public void disconnect(String user, String friend) {
+        record(new Change(user, friend, false));
+        publish(new Change(user, friend, false));
+    }
+
+    // Se non se pode publicar, as demais instancias verán o cambio na súa seguinte recarga completa
+    private void publish(Change change) {
+        try {
+            long id = sequences.generateSequences(FriendshipChange.SEQUENCE_NAME, 1);
+            mongo.insert(new FriendshipChange(id, change.user, change.friend, change.connect, new Date()));
+        } catch (RuntimeException e) {
+            logger.warn("Could not publish the friendship change between {} and {}", change.user, change.friend, e);
+        }
+    }
+
+    private void record(Change change) {
+        lock.writeLock().lock();
+        try {
+            change.apply(graph);
+            if (journal != null) journal.add(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Change {
+        private final String user;
+        private final String friend;
+        private final boolean connect;
+
+        private Change(String user, String friend, boolean connect) {
+            this.user = user;
+            this.friend = friend;
+            this.connect = connect;
+        }
+
+        private void apply(Graph graph) {
+            if (connect) graph.connect(user, friend);
+            else graph.disconnect(user, friend);
+        }
+    }
+
+    // Grafo en formato CSR: os amigos de cada usuario están seguidos e ordenados nun único array
+    // (targets[offsets[u] .. offsets[u + 1])), sen un obxecto por usuario nin por amizade.
+    // Os cambios non reescriben o CSR: a fila modificada cópiase a patched e lese de alí ata que
+    // hai tantas filas modificadas que compensa compactalo todo de novo.
+    private static final class Graph {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] names = new String[64];
+        private int[] offsets = {0};
+        private int[] targets = NONE;
+        private final Map<Integer, int[]> patched = new HashMap<>();
+
+        // Constrúe o CSR ordenando as amizades empaquetadas en longs (usuario nos 32 bits altos)
+        private static Graph load(Iterator<Friendship> friendships) {
+            Graph graph = new Graph();
+            long[] edges = new long[1024];
+            int size = 0;
+            while (friendships.hasNext()) {
+                Friendship friendship = friendships.next();
+                String user = friendship.getUser();
+                String friend = friendship.getFriend();
+                if (user == null || friend == null || user.equals(friend)) continue;
+
+                int a = graph.id(user);
+                int b = graph.id(friend);
+                if (size + 2 > edges.length) edges = Arrays.copyOf(edges, edges.length * 2);
+                edges[size++] = ((long) a << 32) | b;
+                edges[size++] = ((long) b << 32) | a;
+            }
+            Arrays.parallelSort(edges, 0, size);
+
+            int count = graph.ids.size();
+            int[] offsets = new int[count + 1];
+            int[] targets = new int[size];
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                if (i > 0 && edges[i] == edges[i - 1]) continue;
+                offsets[(int) (edges[i] >>> 32) + 1]++;
+                targets[length++] = (int) edges[i];
+            }
+            for (int u = 0; u < count; u++) offsets[u + 1] += offsets[u];
+
+            graph.offsets = offsets;
+            graph.targets = Arrays.copyOf(targets, length);
+            return graph;
+        }
+
+        private boolean connected(String user, String friend) {
+            Integer a = ids.get(user);
+            Integer b = ids.get(friend);
+            if (a == null || b == null) return false;
+            return Arrays.binarySearch(row(a), start(a), end(a), b) >= 0;
+        }
+
+        private void connect(String user, String friend) {
+            if (user == null || friend == null || user.equals(friend)) return;
+            int a = id(user);
+            int b = id(friend);
+            patched.put(a, insert(copy(a), b));
+            patched.put(b, insert(copy(b), a));
+            compactIfNeeded();
+        }
+
+        private void disconnect(String user, String friend) {
+            Integer a = ids.get(user);
+            Integer b = ids.get(friend);
+            if (a == null || b == null) return;
+            patched.put(a, delete(copy(a), b));
+            patched.put(b, delete(copy(b), a));
+            compactIfNeeded();
+        }
+
+        // Amigos de amigos do usuario que non son xa amigos seus nin están en exclude, ordenados
+        // polo número de amigos en común. Dos amigos con moitísimos amigos só se percorren
+        // os primeiros fanOut, e en total non se visitan máis de maxVisits amizades
+        private LinkedHashMap<String, Integer> suggestions(String user, Set<String> exclude, int size, int fanOut, int maxVisits) {
+            LinkedHashMap<String, Integer> result = new LinkedHashMap<>();
+            Integer source = ids.get(user);
+            if (source == null) return result;
+
+            int[] friends = row(source);
+            int from = start(source);
+            int to = end(source);
+            IntMap counter = new IntMap(Math.min(maxVisits, Math.max(16, (to - from) * 32)));
+            int visits = 0;
+            for (int p = from; p < to && visits < maxVisits; p++) {
+                int friend = friends[p];
+                int[] second = row(friend);
+                int limit = Math.min(end(friend), start(friend) + fanOut);
+                for (int q = start(friend); q < limit && visits < maxVisits; q++, visits++) {
+                    int candidate = second[q];
+                    if (candidate == source || Arrays.binarySearch(friends, from, to, candidate) >= 0) continue;
+                    counter.increment(candidate);
+                }
+            }
+
+            // Ordenamos por (amigos en común desc, id asc) empaquetando ambos nun long
+            long[] ranked = new long[counter.size];
+            int length = 0;
+            for (int slot = 0; slot < counter.keys.length; slot++) {
+                if (counter.keys[slot] == 0) continue;
+                ranked[length++] = ((long) counter.values[slot] << 32) | (Integer.MAX_VALUE - (counter.keys[slot] - 1));
+            }
+            Arrays.sort(ranked, 0, length);
+            for (int i = length - 1; i >= 0 && result.size() < size; i--) {
+                String name = names[Integer.MAX_VALUE - (int) ranked[i]];
+                if (!exclude.contains(name)) result.put(name, (int) (ranked[i] >>> 32));
+            }
+            return result;
+        }
+
+        // Amigos comúns: mestura dos dous arrays ordenados ou, se un é moito máis curto,
+        // unha busca binaria no longo por cada elemento do curto
+        private List<String> mutual(String user, String other) {
+            List<String> result = new ArrayList<>();
+            Integer a = ids.get(user);
+            Integer b = ids.get(other);
+            if (a == null || b == null) return result;
+
+            if (end(a) - start(a) > end(b) - start(b)) {
+                Integer swap = a;
+                a = b;
+                b = swap;
+            }
+            int[] small = row(a);
+            int[] large = row(b);
+            int i = start(a);
+            int j = start(b);
+            int smallEnd = end(a);
+            int largeEnd = end(b);
+
+            if ((long) (smallEnd - i) * 16 < largeEnd - j) {
+                for (; i < smallEnd; i++) {
+                    int position = Arrays.binarySearch(large, j, largeEnd, small[i]);
+                    if (position >= 0) result.add(names[small[i]]);
+                    j = position >= 0 ? position + 1 : -position - 1;
+                }
+                return result;
+            }
+
+            while (i < smallEnd && j < largeEnd) {
+                if (small[i] == large[j]) {
+                    result.add(names[small[i]]);
+                    i++;
+                    j++;
+                } else if (small[i] < large[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result;
+        }
+
+        // Camiño máis curto entre dous usuarios cunha busca en anchura dende os dous extremos,
+        // expandindo sempre a fronteira máis pequena. Devolve null se non hai camiño de como
+        // moito maxDepth amizades ou se se superan maxVisits amizades visitadas
+        private List<String> path(String user, String other, int maxDepth, int maxVisits) {
+            Integer source = ids.get(user);
+            Integer target = ids.get(other);
+            if (source == null || target == null) return null;
+            if (source.equals(target)) return Collections.singletonList(user);
+
+            IntMap forward = new IntMap(64);
+            IntMap backward = new IntMap(64);
+            forward.putIfAbsent(source, source);
+            backward.putIfAbsent(target, target);
+            IntList forwardFrontier = new IntList();
+            IntList backwardFrontier = new IntList();
+            forwardFrontier.add(source);
+            backwardFrontier.add(target);
+
+            int depth = 0;
+            int visits = 0;
+            while (forwardFrontier.size > 0 && backwardFrontier.size > 0 && depth < maxDepth) {
+                boolean fromSource = forwardFrontier.size <= backwardFrontier.size;
+                IntList frontier = fromSource ? forwardFrontier : backwardFrontier;
+                IntMap parents = fromSource ? forward : backward;
+                IntMap others = fromSource ? backward : forward;
+
+                // Completamos o nivel enteiro e quedamos co punto de encontro máis próximo ao outro extremo
+                IntList next = new IntList();
+                int meeting = -1;
+                int meetingDepth = Integer.MAX_VALUE;
+                for (int f = 0; f < frontier.size; f++) {
+                    int current = frontier.values[f];
+                    int[] list = row(current);
+                    for (int p = start(current); p < end(current); p++) {
+                        if (++visits > maxVisits) return null;
+                        int neighbour = list[p];
+                        if (!parents.putIfAbsent(neighbour, current)) continue;
+                        if (others.contains(neighbour)) {
+                            int distance = depth(others, neighbour);
+                            if (distance < meetingDepth) {
+                                meeting = neighbour;
+                                meetingDepth = distance;
+                            }
+                        }
+                        next.add(neighbour);
+                    }
+                }
+                depth++;
+                if (meeting >= 0) {
+                    List<String> result = new ArrayList<>();
+                    for (int node = meeting; ; node = forward.get(node)) {
+                        result.add(names[node]);
+                        if (node == source) break;
+                    }
+                    Collections.reverse(result);
+                    for (int node = meeting; node != target; ) {
+                        node = backward.get(node);
+                        result.add(names[node]);
+                    }
+                    return result.size() - 1 <= maxDepth ? result : null;
+                }
+                if (fromSource) forwardFrontier = next;
+                else backwardFrontier = next;
+            }
+            return null;
+        }
+
+        // Distancia dun nodo ao extremo do que partiu a busca, seguindo os pais
+        private static int depth(IntMap parents, int node) {
+            int depth = 0;
+            for (int parent = parents.get(node); parent != node; parent = parents.get(node)) {
+                node = parent;
+                depth++;
+            }
+            return depth;
+        }
+
+        private int id(String email) {
+            Integer id = ids.get(email);
+            if (id != null) return id;
+
+            id = ids.size();
+            ids.put(email, id);
+            if (id == names.length) names = Arrays.copyOf(names, id * 2);
+            names[id] = email;
+            return id;
+        }
+
+        // Fila dun usuario: o array onde están os seus amigos e o rango que ocupan nel
+        private int[] row(int id) {
+            int[] list = patched.get(id);
+            if (list != null) return list;
+            return id < offsets.length - 1 ? targets : NONE;
+        }
+
+        private int start(int id) {
+            return patched.containsKey(id) || id >= offsets.length - 1 ? 0 : offsets[id];
+        }
+
+        private int end(int id) {
+            int[] list = patched.get(id);
+            if (list != null) return list.length;
+            return id < offsets.length - 1 ? offsets[id + 1] : 0;
+        }
+
+        private int[] copy(int id) {
+            return Arrays.copyOfRange(row(id), start(id), end(id));
+        }
+
+        private void compactIfNeeded() {
+            if (patched.size() <= Math.max(1024, ids.size() / 16)) return;
+
+            int count = ids.size();
+            int[] compactOffsets = new int[count + 1];
+            for (int u = 0; u < count; u++) compactOffsets[u + 1] = compactOffsets[u] + end(u) - start(u);
+            int[] compactTargets = new int[compactOffsets[count]];
+            for (int u = 0; u < count; u++) System.arraycopy(row(u), start(u), compactTargets, compactOffsets[u], end(u) - start(u));
+
+            offsets = compactOffsets;
+            targets = compactTargets;
+            patched.clear();
+        }
+
+        private static int[] insert(int[] list, int value) {
+            int position = Arrays.binarySearch(list, value);
+            if (position >= 0) return list;
+
+            position = -position - 1;
+            int[] result = new int[list.length + 1];
+            System.arraycopy(list, 0, result, 0, position);
+            result[position] = value;
+            System.arraycopy(list, position, result, position + 1, list.length - position);
+            return result;
+        }
+
+        private static int[] delete(int[] list, int value) {
+            int position = Arrays.binarySearch(list, value);
+            if (position < 0) return list;
+
+            int[] result = new int[list.length - 1];
+            System.arraycopy(list, 0, result, 0, position);
+            System.arraycopy(list, position + 1, result, position, list.length - position - 1);
+            return result;
+        }
+    }
+
+    // Táboa int -> int con direccionamento aberto, para non crear un Integer por usuario visitado.
+    // As claves gárdanse sumando 1, de forma que 0 marca as posicións libres
+    private static final class IntMap {
+        private int[] keys;
+        private int[] values;
+        private int size;
+
+        private IntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+            this.keys = new int[capacity];
+            this.values = new int[capacity];
+        }
+
+        private int get(int key) {
+            int slot = find(key);
+            return keys[slot] == 0 ? -1 : values[slot];
+        }
+
+        private boolean contains(int key) {
+            return keys[find(key)] != 0;
+        }
+
+        // Devolve false se a clave xa estaba
+        private boolean putIfAbsent(int key, int value) {
+            int slot = find(key);
+            if (keys[slot] != 0) return false;
+            insert(slot, key, value);
+            return true;
+        }
+
+        private void increment(int key) {
+            int slot = find(key);
+            if (keys[slot] != 0) values[slot]++;
+            else insert(slot, key, 1);
+        }
+
+        private void insert(int slot, int key, int value) {
+            keys[slot] = key + 1;
+            values[slot] = value;
+            if (++size * 2 >= keys.length) grow();
+        }
+
+        private int find(int key) {
+            int mask = keys.length - 1;
+            int slot = (key * 0x9E3779B9) >>> 1 & mask;
+            while (keys[slot] != 0 && keys[slot] != key + 1) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0) continue;
+                int slot = find(oldKeys[i] - 1);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Array de enteiros que crece, para as fronteiras da busca en anchura
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package gal.usc.etse.grei.es.project.service;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Índice HNSW (grafo xerárquico de mundo pequeno) para atopar as películas co maior produto
+// escalar co vector dun usuario sen puntuar todas. O produto escalar non é unha distancia, así
+// que cada vector de película esténdese cunha compoñente máis, sqrt(M² - |v|²), onde M é a maior
+// das normas: todas pasan a ter norma M e a película máis próxima (distancia euclídea) a unha
+// consulta estendida cun 0 é a do maior produto escalar. É inmutable unha vez construído.
+final class HnswIndex {
+    private final int dimension;
+    private final float[] vectors;
+    private final int size;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelFactor;
+    // links[nodo][nivel] = {número de veciños, veciño, veciño...}
+    private final int[][][] links;
+    private int entry = -1;
+    private int top = -1;
+
+    private HnswIndex(int dimension, float[] vectors, int size, int m, int efConstruction) {
+        this.dimension = dimension;
+        this.vectors = vectors;
+        this.size = size;
+        this.m = m;
+        this.m0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelFactor = 1 / Math.log(m);
+        this.links = new int[size][][];
+    }
+
+    // Indexa os count vectores de rank compoñentes gardados seguidos en factors
+    static HnswIndex build(float[] factors, int count, int rank, int m, int efConstruction, long seed) {
+        float max = 0;
+        for (int node = 0; node < count; node++) max = Math.max(max, norm(factors, node * rank, rank));
+
+        int dimension = rank + 1;
+        float[] vectors = new float[count * dimension];
+        for (int node = 0; node < count; node++) {
+            System.arraycopy(factors, node * rank, vectors, node * dimension, rank);
+            float norm = norm(factors, node * rank, rank);
+            vectors[node * dimension + rank] = (float) Math.sqrt(Math.max(0, (double) max * max - (double) norm * norm));
+        }
+
+        HnswIndex index = new HnswIndex(dimension, vectors, count, Math.max(2, m), efConstruction);
+        Random random = new Random(seed);
+        Stamps visited = new Stamps(count);
+        for (int node = 0; node < count; node++) index.insert(node, random, visited);
+        return index;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Os k nodos co maior produto escalar coa consulta, de maior a menor
+    int[] search(float[] query, int k, int ef) {
+        if (entry < 0 || k <= 0) return new int[0];
+        float[] extended = Arrays.copyOf(query, dimension);
+
+        int current = entry;
+        for (int level = top; level > 0; level--) current = greedy(extended, current, level);
+
+        int width = Math.max(ef, k);
+        Heap results = layer(extended, current, width, 0, new Hashed(width * m0));
+        while (results.size > k) results.pop();
+        int[] nodes = new int[results.size];
+        for (int i = nodes.length - 1; i >= 0; i--) nodes[i] = results.pop();
+        return nodes;
+    }
+
+    private void insert(int node, Random random, Stamps visited) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelFactor);
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) links[node][l] = new int[(l == 0 ? m0 : m) + 1];
+
+        if (entry < 0) {
+            entry = node;
+            top = level;
+            return;
+        }
+
+        float[] query = Arrays.copyOfRange(vectors, node * dimension, (node + 1) * dimension);
+        int current = entry;
+        for (int l = top; l > level; l--) current = greedy(query, current, l);
+
+        for (int l = Math.min(level, top); l >= 0; l--) {
+            Heap found = layer(query, current, efConstruction, l, visited.next());
+            int[] candidates = found.drainAscending();
+            current = candidates[0];
+
+            int[] selected = select(node, candidates, l == 0 ? m0 : m);
+            for (int neighbour : selected) {
+                link(node, neighbour, l);
+                link(neighbour, node, l);
+            }
+        }
+
+        if (level > top) {
+            entry = node;
+            top = level;
+        }
+    }
+
+    // Engade a ligazón e, se o nodo xa ten demasiados veciños, volve escoller entre todos eles
+    private void link(int from, int to, int level) {
+        int[] list = links[from][level];
+        int count = list[0];
+        if (count < list.length - 1) {
+            list[++count] = to;
+            list[0] = count;
+            return;
+        }
+
+        int[] candidates = Arrays.copyOfRange(list, 1, count + 2);
+        candidates[count] = to;
+        sortByDistance(from, candidates);
+        int[] selected = select(from, candidates, list.length - 1);
+        list[0] = selected.length;
+        System.arraycopy(selected, 0, list, 1, selected.length);
+    }
+
+    // Heurística do HNSW: un candidato só se garda se está máis preto do nodo que de calquera
+    // veciño xa escollido, para que as ligazóns apunten en direccións distintas. Se quedan ocos,
+    // énchense cos descartados máis próximos. Os candidatos chegan ordenados por distancia.
+    private int[] select(int node, int[] candidates, int limit) {
+        int[] selected = new int[Math.min(limit, candidates.length)];
+        boolean[] taken = new boolean[candidates.length];
+        int count = 0;
+        for (int c = 0; c < candidates.length && count < selected.length; c++) {
+            float distance = distance(node, candidates[c]);
+            boolean diverse = true;
+            for (int s = 0; s < count && diverse; s++) {
+                if (distance(candidates[c], selected[s]) < distance) diverse = false;
+            }
+            if (diverse) {
+                selected[count++] = candidates[c];
+                taken[c] = true;
+            }
+        }
+        for (int c = 0; c < candidates.length && count < selected.length; c++) {
+            if (!taken[c]) selected[count++] = candidates[c];
+        }
+        return selected;
+    }
+
+    private int greedy(float[] query, int start, int level) {
+        int current = start;
+        float best = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] list = links[current][level];
+            for (int i = 1; i <= list[0]; i++) {
+                float distance = distance(query, list[i]);
+                if (distance < best) {
+                    best = distance;
+                    current = list[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Busca en anchura dentro dun nivel: devolve ata ef nodos nun heap co máis afastado arriba
+    private Heap layer(float[] query, int start, int ef, int level, Visited visited) {
+        Heap candidates = new Heap(false, ef);
+        Heap results = new Heap(true, ef + 1);
+        float distance = distance(query, start);
+        candidates.push(start, distance);
+        results.push(start, distance);
+        visited.add(start);
+
+        while (candidates.size > 0) {
+            float closest = candidates.peekKey();
+            if (results.size >= ef && closest > results.peekKey()) break;
+            int current = candidates.pop();
+
+            if (links[current].length <= level) continue;
+            int[] list = links[current][level];
+            for (int i = 1; i <= list[0]; i++) {
+                int neighbour = list[i];
+                if (!visited.add(neighbour)) continue;
+
+                float d = distance(query, neighbour);
+                if (results.size < ef || d < results.peekKey()) {
+                    candidates.push(neighbour, d);
+                    results.push(neighbour, d);
+                    if (results.size > ef) results.pop();
+                }
+            }
+        }
+        return results;
+    }
+
+    private void sortByDistance(int node, int[] candidates) {
+        Heap heap = new Heap(true, candidates.length);
+        for (int candidate : candidates) heap.push(candidate, distance(node, candidate));
+        int[] sorted = heap.drainAscending();
+        System.arraycopy(sorted, 0, candidates, 0, sorted.length);
+    }
+
+    private float distance(float[] query, int node) {
+        int offset = node * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            float difference = query[i] - vectors[offset + i];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    private float distance(int a, int b) {
+        int first = a * dimension;
+        int second = b * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            float difference = vectors[first + i] - vectors[second + i];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    private static float norm(float[] values, int offset, int length) {
+        double sum = 0;
+        for (int i = offset; i < offset + length; i++) sum += values[i] * values[i];
+        return (float) Math.sqrt(sum);
+    }
+
+    private interface Visited {
+        // Marca o nodo e indica se aínda non estaba visitado
+        boolean add(int node);
+    }
+
+    // Nodos visitados durante a construción. En lugar de limpar un mapa de bits do tamaño do
+    // catálogo en cada nivel de cada inserción, cada busca usa unha época nova: un nodo está
+    // visitado se a súa marca coincide coa época actual
+    private static final class Stamps implements Visited {
+        private final int[] marks;
+        private int epoch;
+
+        private Stamps(int size) {
+            this.marks = new int[size];
+        }
+
+        private Stamps next() {
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean add(int node) {
+            if (marks[node] == epoch) return false;
+            marks[node] = epoch;
+            return true;
+        }
+    }
+
+    // Nodos visitados nunha consulta. As buscas son concorrentes e só visitan uns poucos miles
+    // de nodos, así que cada unha usa un conxunto pequeno con direccionamento aberto
+    private static final class Hashed implements Visited {
+        private int[] slots;
+        private int size;
+
+        private Hashed(int expected) {
+            this.slots = new int[Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1];
+        }
+
+        @Override
+        public boolean add(int node) {
+            // Gardamos node + 1 para que o 0 marque as posicións baleiras
+            if (!insert(slots, node + 1)) return false;
+            if (++size * 2 > slots.length) grow();
+            return true;
+        }
+
+        private void grow() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            for (int value : old) if (value != 0) insert(slots, value);
+        }
+
+        private static boolean insert(int[] slots, int value) {
+            int mask = slots.length - 1;
+            int hash = value * 0x9E3779B9;
+            for (int i = (hash ^ (hash >>> 16)) & mask; ; i = (i + 1) & mask) {
+                if (slots[i] == value) return false;
+                if (slots[i] == 0) {
+                    slots[i] = value;
+                    return true;
+                }
+            }
+        }
+    }
+
+    // Heap binario de pares (distancia, nodo) sobre arrays primitivos; max indica se a raíz
+    // é o máis afastado (resultados) ou o máis próximo (candidatos por explorar)
+    private static final class Heap {
+        private final boolean max;
+        private float[] keys;
+        private int[] values;
+        private int size;
+
+        private Heap(boolean max, int capacity) {
+            this.max = max;
+            this.keys = new float[Math.max(capacity, 4)];
+            this.values = new int[keys.length];
+        }
+
+        private void push(int value, float key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int child = size++;
+            while (child > 0) {
+                int parent = (child - 1) >> 1;
+                if (!before(key, keys[parent])) break;
+                keys[child] = keys[parent];
+                values[child] = values[parent];
+                child = parent;
+            }
+            keys[child] = key;
+            values[child] = value;
+        }
+
+        private float peekKey() {
+            return keys[0];
+        }
+
+        private int pop() {
+            int result = values[0];
+            size--;
+            float key = keys[size];
+            int value = values[size];
+            int parent = 0;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= size) break;
+                if (child + 1 < size && before(keys[child + 1], keys[child])) child++;
+                if (!before(keys[child], key)) break;
+                keys[parent] = keys[child];
+                values[parent] = values[child];
+                parent = child;
+            }
+            keys[parent] = key;
+            values[parent] = value;
+            return result;
+        }
+
+        // Vacía un heap de máximos devolvendo os nodos do máis próximo ao máis afastado
+        private int[] drainAscending() {
+            int[] result = new int[size];
+            for (int i = result.length - 1; i >= 0; i--) result[i] = pop();
+            return result;
+        }
+
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package gal.usc.etse.grei.es.project.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(
+        name = "ImportReport",
+        description = "Result of a bulk import: counters, throughput and the rows that could not be imported"
+)
+public class ImportReport {
+    // Gardamos como moito este número de erros para non encher a memoria cun ficheiro mal formado
+    private static final int MAX_ERRORS = 1000;
+
+    private final long started = System.nanoTime();
+    private long read;
+    private long inserted;
+    private long failed;
+    private boolean aborted;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+    private final List<RowError> errors = new ArrayList<>();
+
+    void read() {
+        read++;
+    }
+
+    void inserted(long count) {
+        inserted += count;
+    }
+
+    void fail(long row, String message) {
+        failed++;
+        if (errors.size() < MAX_ERRORS) errors.add(new RowError(row, message));
+    }
+
+    // O resto do fluxo non se pode ler porque o JSON está mal formado
+    void abort(long row, String message) {
+        aborted = true;
+        fail(row, message);
+    }
+
+    void finish() {
+        elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        rowsPerSecond = elapsedMillis > 0 ? read * 1000d / elapsedMillis : read;
+    }
+
+    public long getRead() {
+        return read;
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    @Schema(description = "The first errors found, one per rejected row")
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public static class RowError {
+        @Schema(description = "Line of the row in the input, starting at 1", example = "42")
+        private final long row;
+        @Schema(example = "title: The title can not be empty")
+        private final String message;
+
+        RowError(long row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package gal.usc.etse.grei.es.project.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import gal.usc.etse.grei.es.project.configuration.CacheConfiguration;
+import gal.usc.etse.grei.es.project.model.Assessment;
+import gal.usc.etse.grei.es.project.model.Date;
+import gal.usc.etse.grei.es.project.model.Film;
+import gal.usc.etse.grei.es.project.model.User;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Carga masiva de películas e valoracións dende NDJSON (un documento por liña). O fluxo lese
+// documento a documento, cada fila valídase coas mesmas regras que a API, e as válidas
+// escríbense en lotes cun bulkWrite desordenado, de forma que unha fila errónea non para o resto.
+// Os índices en memoria só existen no servidor: dende a liña de comandos non se crean, e os
+// servidores recollen os datos importados na súa seguinte actualización periódica.
+@Service
+public class ImportService {
+    private static final Logger logger = LoggerFactory.getLogger(ImportService.class);
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoOperations mongo;
+    private final ObjectMapper mapper;
+    private final Validator validator;
+    private final SequenceGeneratorService sequences;
+    private final ObjectProvider<MovieSearchIndex> index;
+    private final ObjectProvider<SimilarMovieIndex> similar;
+    private final RatingService ratings;
+    private final ObjectProvider<RecommendationService> recommendations;
+    private final int batchSize;
+
+    @Autowired
+    public ImportService(MongoOperations mongo, ObjectMapper mapper, Validator validator, SequenceGeneratorService sequences, ObjectProvider<MovieSearchIndex> index, ObjectProvider<SimilarMovieIndex> similar, RatingService ratings, ObjectProvider<RecommendationService> recommendations, @Value("${imports.batch-size:1000}") int batchSize) {
+        this.mongo = mongo;
+        this.mapper = mapper;
+        this.validator = validator;
+        this.sequences = sequences;
+        this.index = index;
+        this.similar = similar;
+        this.ratings = ratings;
+        this.recommendations = recommendations;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    //Import movies
+    // Baleiramos a caché enteira: pode ter gardadas como inexistentes películas que agora se crean
+    @CacheEvict(cacheNames = CacheConfiguration.FILMS, allEntries = true)
+    public ImportReport importMovies(InputStream in) throws IOException {
+        return load(in, Film.class, this::insertMovies);
+    }
+
+    //Import assessments
+    public ImportReport importAssessments(InputStream in) throws IOException {
+        return load(in, Assessment.class, this::insertAssessments);
+    }
+
+    private <T> ImportReport load(InputStream in, Class<T> type, Writer<T> writer) throws IOException {
+        ImportReport report = new ImportReport();
+        List<Row<T>> batch = new ArrayList<>(batchSize);
+        long row = 0;
+
+        try (MappingIterator<T> rows = mapper.readerFor(type).readValues(in)) {
+            while (rows.hasNextValue()) {
+                row++;
+                report.read();
+
+                T value;
+                try {
+                    value = rows.nextValue();
+                } catch (JsonMappingException e) {
+                    // O documento é JSON válido pero non se corresponde co modelo: seguimos co seguinte
+                    report.fail(row, e.getOriginalMessage());
+                    continue;
+                }
+
+                String violations = validate(value);
+                if (violations != null) {
+                    report.fail(row, violations);
+                    continue;
+                }
+
+                batch.add(new Row<>(row, value));
+                if (batch.size() >= batchSize) {
+                    writer.write(batch, report);
+                    batch.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            report.abort(row, e.getOriginalMessage());
+        } finally {
+            // Gardamos o que xa estaba validado aínda que o resto do fluxo non se poida ler
+            if (!batch.isEmpty()) writer.write(batch, report);
+            report.finish();
+        }
+
+        logger.info("Imported {} of {} {} rows in {} ms ({} rows/s)", report.getInserted(), report.getRead(),
+                type.getSimpleName(), report.getElapsedMillis(), Math.round(report.getRowsPerSecond()));
+        return report;
+    }
+
+    private void insertMovies(List<Row<Film>> batch, ImportReport report) {
+        // Igual que ao crear unha película: o resumo das valoracións só o mantén o servizo de valoracións
+        Instant now = Instant.now();
+        for (Row<Film> row : batch)
+            row.value.setRating(null).setLastModified(now).setReleaseDateKey(Date.key(row.value.getReleaseDate()));
+
+        List<Row<Film>> inserted = insert(Film.class, batch, report);
+        index.ifAvailable(search -> inserted.forEach(row -> search.index(row.value)));
+        similar.ifAvailable(lsh -> inserted.forEach(row -> lsh.index(row.value)));
+    }
+
+    private void insertAssessments(List<Row<Assessment>> batch, ImportReport report) {
+        // As valoracións deben referirse a películas e usuarios existentes
+        Set<String> movies = existing(Film.class, batch.stream().map(row -> row.value.getMovie()).collect(Collectors.toSet()));
+        Set<String> users = existing(User.class, batch.stream().map(row -> row.value.getUser()).collect(Collectors.toSet()));
+
+        List<Row<Assessment>> valid = new ArrayList<>(batch.size());
+        for (Row<Assessment> row : batch) {
+            if (!movies.contains(row.value.getMovie())) report.fail(row.number, "movie: The movie " + row.value.getMovie() + " does not exist");
+            else if (!users.contains(row.value.getUser())) report.fail(row.number, "user: The user " + row.value.getUser() + " does not exist");
+            else valid.add(row);
+        }
+        if (valid.isEmpty()) return;
+
+        // Os ids asígnaos sempre o servidor: reservamos un rango para todo o lote cun único $inc,
+        // polo que o AssessmentModelListener xa non ten que xerar ningún
+        long id = sequences.generateSequences(Assessment.SEQUENCE_NAME, valid.size());
+        Instant now = Instant.now();
+        for (Row<Assessment> row : valid) row.value.setId(id++).setLastModified(now);
+
+        List<Assessment> inserted = insert(Assessment.class, valid, report).stream()
+                .map(row -> row.value)
+                .collect(Collectors.toList());
+        ratings.addAll(inserted);
+        recommendations.ifAvailable(model -> inserted.forEach(assessment -> model.changed(assessment.getUser())));
+    }
+
+    // Escribe o lote e devolve as filas que se gardaron, rexistrando no informe as que fallaron
+    private <T> List<Row<T>> insert(Class<T> type, List<Row<T>> batch, ImportReport report) {
+        BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, type);
+        bulk.insert(batch.stream().map(row -> row.value).collect(Collectors.toList()));
+
+        Set<Integer> failed = new HashSet<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failed.add(error.getIndex());
+                String message = error.getCode() == DUPLICATE_KEY ? "id: Already exists" : error.getMessage();
+                report.fail(batch.get(error.getIndex()).number, message);
+            }
+        }
+
+        List<Row<T>> inserted = new ArrayList<>(batch.size() - failed.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (!failed.contains(i)) inserted.add(batch.get(i));
+        }
+        report.inserted(inserted.size());
+        return inserted;
+    }
+
+    // Ids dos documentos indicados que existen, consultados todos xuntos
+    private Set<String> existing(Class<?> type, Set<String> ids) {
+        ids.remove(null);
+        if (ids.isEmpty()) return ids;
+
+        Query query = new Query(where("_id").in(ids));
+        query.fields().include("_id");
+        return mongo.find(query, Document.class, mongo.getCollectionName(type)).stream()
+                .map(document -> String.valueOf(document.get("_id")))
+                .collect(Collectors.toSet());
+    }
+
+    private String validate(Object value) {
+        Set<ConstraintViolation<Object>> violations = validator.validate(value);
+        if (violations.isEmpty()) return null;
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    @FunctionalInterface
+    private interface Writer<T> {
+        void write(List<Row<T>> batch, ImportReport report);
+    }
+
+    private static final class Row<T> {
+        private final long number;
+        private final T value;
+
+        private Row(long number, T value) {
+            this.number = number;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package gal.usc.etse.grei.es.project.service;
+
+import gal.usc.etse.grei.es.project.model.Assessment;
+import gal.usc.etse.grei.es.project.model.Film;
+import gal.usc.etse.grei.es.project.model.Friendship;
+import gal.usc.etse.grei.es.project.model.FriendshipChange;
+import gal.usc.etse.grei.es.project.model.User;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+
+// Declara os índices que precisan as consultas da aplicación, créaos ao arrancar se non existen
+// e comproba con explain que cada consulta se resolve cun índice: sen percorrer a colección
+// (COLLSCAN) e sen ordenar en memoria (SORT).
+@Service
+public class IndexManager {
+    private static final Logger logger = LoggerFactory.getLogger(IndexManager.class);
+    private static final String ANY = "?";
+
+    public enum Verification { LOG, FAIL, OFF }
+
+    private final MongoOperations mongo;
+    private final Verification verification;
+    private final Map<Class<?>, List<Index>> indexes = new LinkedHashMap<>();
+    private final List<Shape> shapes = new ArrayList<>();
+
+    @Autowired
+    public IndexManager(MongoOperations mongo, @Value("${indexes.verify:log}") String verification) {
+        this.mongo = mongo;
+        this.verification = Verification.valueOf(verification.trim().toUpperCase(Locale.ROOT));
+
+        // Valoracións dunha película e dun usuario, por orde de inserción ou por puntuación
+        index(Assessment.class, "movie_id", "movie", "_id");
+        index(Assessment.class, "movie_rating_id", "movie", "rating", "_id");
+        index(Assessment.class, "user_id", "user", "_id");
+        index(Assessment.class, "user_rating_id", "user", "rating", "_id");
+        index(Assessment.class, "lastModified_id", "lastModified", "_id");
+        // Amizades: a busca dunha concreta e as dun usuario, xa sexa quen a pediu ou quen a recibiu
+        index(Friendship.class, "user_friend", "user", "friend");
+        index(Friendship.class, "user_id", "user", "_id");
+        index(Friendship.class, "friend_id", "friend", "_id");
+        index(Friendship.class, "user_since_id", "user", "since", "_id");
+        index(Friendship.class, "friend_since_id", "friend", "since", "_id");
+        // Cambios recentes nas amizades que len as demais instancias; Mongo bórraos pasado un tempo
+        expiring(FriendshipChange.class, "at", "at", FriendshipChange.RETENTION);
+        // Ordenacións dos listados de películas e usuarios (as claves admitidas están en SortPolicy)
+        index(Film.class, "title_id", "title", "_id");
+        index(Film.class, "releaseDateKey_id", "releaseDateKey", "_id");
+        index(Film.class, "rating_id", "rating.average", "_id");
+        index(Film.class, "lastModified_id", "lastModified", "_id");
+        index(User.class, "name_id", "name", "_id");
+        index(User.class, "lastModified_id", "lastModified", "_id");
+
+        shape("AssessmentRepository.findAllByMovie", Assessment.class, new Document("movie", ANY), Sort.by("_id"));
+        shape("AssessmentRepository.findAllByMovie by rating", Assessment.class, new Document("movie", ANY), Sort.by(Sort.Direction.DESC, "rating", "_id"));
+        shape("AssessmentRepository.findAllByUser", Assessment.class, new Document("user", ANY), Sort.by("_id"));
+        shape("AssessmentRepository.findAllByUser by rating", Assessment.class, new Document("user", ANY), Sort.by(Sort.Direction.DESC, "rating", "_id"));
+        shape("FriendshipRepository.findByUserAndFriend", Friendship.class, new Document("user", ANY).append("friend", ANY), Sort.unsorted());
+        shape("FriendshipRepository.findByUserOrFriend", Friendship.class,
+                new Document("$or", Arrays.asList(new Document("user", ANY), new Document("friend", ANY))), Sort.by("_id"));
+        shape("FriendshipRepository.findByUserOrFriend by since", Friendship.class,
+                new Document("$or", Arrays.asList(new Document("user", ANY), new Document("friend", ANY))), Sort.by(Sort.Direction.DESC, "since", "_id"));
+        shape("FriendshipGraph.poll", FriendshipChange.class, new Document("at", new Document("$gte", new Date(0))), Sort.unsorted());
+        shape("MovieService.getAll by title", Film.class, new Document(), Sort.by("title", "_id"));
+        shape("MovieService.getAll by release date", Film.class, new Document(), Sort.by(Sort.Direction.DESC, "releaseDateKey", "_id"));
+        shape("MovieService.getAll released between", Film.class,
+                new Document("releaseDateKey", new Document("$gte", 19800000).append("$lte", 19891231)), Sort.by("releaseDateKey", "_id"));
+        shape("MovieService.getAll by rating", Film.class, new Document(), Sort.by(Sort.Direction.DESC, "rating.average", "_id"));
+        shape("UserService.getAll by name", User.class, new Document(), Sort.by("name", "_id"));
+        for (Class<?> type : Arrays.asList(Film.class, User.class, Assessment.class)) {
+            shape(type.getSimpleName() + " export modified since", type,
+                    new Document("lastModified", new Document("$gte", new Date(0))), Sort.by("lastModified", "_id"));
+        }
+    }
+
+    // Antes de que a aplicación acepte peticións e de cargar os índices en memoria
+    @EventListener(ApplicationStartedEvent.class)
+    public void bootstrap() {
+        ensure();
+        if (verification != Verification.OFF) verify();
+    }
+
+    //Create missing
+    public void ensure() {
+        indexes.forEach((type, declared) -> {
+            String collection = mongo.getCollectionName(type);
+            Set<String> existing = new HashSet<>();
+            for (Document info : mongo.getCollection(collection).listIndexes()) existing.add(keys(info.get("key", Document.class)));
+
+            for (Index index : declared) {
+                if (existing.contains(keys(index.getIndexKeys()))) continue;
+                logger.info("Creating index {} on {}", index.getIndexKeys().toJson(), collection);
+                mongo.indexOps(collection).ensureIndex(index);
+            }
+        });
+    }
+
+    //Check query plans
+    public List<String> verify() {
+        List<String> uncovered = new ArrayList<>();
+        for (Shape shape : shapes) {
+            Document find = new Document("find", mongo.getCollectionName(shape.type))
+                    .append("filter", shape.filter)
+                    .append("limit", 1);
+            if (shape.sort.isSorted()) find.append("sort", sort(shape.sort));
+
+            Document explain = mongo.executeCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+            Object plan = explain.get("queryPlanner", Document.class).get("winningPlan");
+
+            Set<String> stages = new HashSet<>();
+            stages(plan, stages);
+            if (stages.contains("COLLSCAN") || stages.contains("SORT"))
+                uncovered.add(shape.name + " " + stages);
+        }
+
+        if (uncovered.isEmpty()) {
+            logger.info("All {} query shapes are covered by indexes", shapes.size());
+        } else if (verification == Verification.FAIL) {
+            throw new IllegalStateException("Queries not covered by an index: " + uncovered);
+        } else {
+            uncovered.forEach(shape -> logger.warn("Query not covered by an index: {}", shape));
+        }
+        return uncovered;
+    }
+
+    // Patrón de claves comparable: os índices creados dende a shell devolven as direccións como
+    // Double (1.0) e os de Spring como Integer (1). Os tipos especiais (text, hashed...) son textos.
+    // Conservamos a orde dos campos, que forma parte do índice
+    private static String keys(Document keys) {
+        Document normalised = new Document();
+        keys.forEach((field, value) -> normalised.append(field, value instanceof Number ? ((Number) value).intValue() : value));
+        return normalised.toJson();
+    }
+
+    private void index(Class<?> type, String name, String... fields) {
+        Index index = new Index().named(name).background();
+        for (String field : fields) index.on(field, Sort.Direction.ASC);
+        indexes.computeIfAbsent(type, key -> new ArrayList<>()).add(index);
+    }
+
+    private void expiring(Class<?> type, String name, String field, Duration after) {
+        Index index = new Index().named(name).on(field, Sort.Direction.ASC).expire(after).background();
+        indexes.computeIfAbsent(type, key -> new ArrayList<>()).add(index);
+    }
+
+    private void shape(String name, Class<?> type, Document filter, Sort sort) {
+        shapes.add(new Shape(name, type, filter, sort));
+    }
+
+    private static Document sort(Sort sort) {
+        Document document = new Document();
+        for (Sort.Order order : sort) document.append(order.getProperty(), order.isAscending() ? 1 : -1);
+        return document;
+    }
+
+    // Recollemos os nomes de todas as fases do plan, estean onde estean aniñadas
+    private static void stages(Object node, Set<String> stages) {
+        if (node instanceof Document) {
+            Document document = (Document) node;
+            Object stage = document.get("stage");
+            if (stage instanceof String) stages.add((String) stage);
+            document.values().forEach(value -> stages(value, stages));
+        } else if (node instanceof List) {
+            ((List<?>) node).forEach(value -> stages(value, stages));
+        }
+    }
+
+    private static final class Shape {
+        private final String name;
+        private final Class<?> type;
+        private final Document filter;
+        private final Sort sort;
+
+        private Shape(String name, Class<?> type, Document filter, Sort sort) {
+            this.name = name;
+            this.type = type;
+            this.filter = filter;
+            this.sort = sort;
+        }
+    }
+}
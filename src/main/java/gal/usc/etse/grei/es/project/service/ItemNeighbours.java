@@ -0,0 +1,257 @@
+package gal.usc.etse.grei.es.project.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Táboa coas K películas máis parecidas a cada película segundo a similitude coseno axustada:
+// o produto escalar das valoracións centradas na media de cada usuario, dividido polas normas.
+// Gárdase en arrays planos con K posicións por película, ordenadas de maior a menor similitude.
+// Só se gardan similitudes positivas calculadas con polo menos minSupport usuarios en común.
+final class ItemNeighbours {
+    // Películas que calcula cada tarefa fork-join antes de deixar de dividirse
+    private static final int LEAF = 32;
+
+    final int k;
+    final int[] neighbours;
+    final float[] scores;
+    final int[] sizes;
+
+    private ItemNeighbours(int k, int items) {
+        this.k = k;
+        this.neighbours = new int[items * k];
+        this.scores = new float[items * k];
+        this.sizes = new int[items];
+    }
+
+    // Calcula a táboa completa. Cada fila calcúlase de forma independente (as similitudes
+    // son simétricas, pero así as tarefas non comparten nada e non hai que sincronizar)
+    static ItemNeighbours build(RatingMatrix matrix, Settings settings, ForkJoinPool pool) {
+        ItemNeighbours table = new ItemNeighbours(settings.k, matrix.itemCount());
+        BitSet all = new BitSet(matrix.itemCount());
+        all.set(0, matrix.itemCount());
+
+        Computation computation = new Computation(matrix, settings, table, all, null);
+        pool.invoke(computation.task(0, matrix.itemCount()));
+        return table;
+    }
+
+    // Nova táboa tras cambiar as valoracións que afectan ás películas indicadas. As similitudes
+    // entre dúas películas non afectadas non cambian (ningún usuario en común cambiou), así que
+    // as súas filas consérvanse quitando as entradas das afectadas e ofrecéndolles as novas.
+    // Estas filas poden quedar con menos de K veciños ata a seguinte reconstrución completa.
+    ItemNeighbours update(RatingMatrix matrix, BitSet dirty, Settings settings, ForkJoinPool pool) {
+        int items = matrix.itemCount();
+        BitSet affected = (BitSet) dirty.clone();
+        if (items > sizes.length) affected.set(sizes.length, items);
+
+        ItemNeighbours table = new ItemNeighbours(k, items);
+        for (int item = 0; item < sizes.length; item++) {
+            if (affected.get(item)) continue;
+            int from = item * k;
+            for (int p = from; p < from + sizes[item]; p++) {
+                if (!affected.get(neighbours[p])) table.offer(item, neighbours[p], scores[p]);
+            }
+        }
+
+        Offers offers = new Offers();
+        Computation computation = new Computation(matrix, settings, table, affected, offers);
+        pool.invoke(computation.task(0, items));
+
+        // Cada oferta di que a película afectada "from" é parecida á película non afectada "to"
+        for (int i = 0; i < offers.size; i++) table.offer(offers.to[i], offers.from[i], offers.scores[i]);
+        for (int item = 0; item < items; item++) if (!affected.get(item)) table.order(item);
+        return table;
+    }
+
+    int size(int item) {
+        return item < sizes.length ? sizes[item] : 0;
+    }
+
+    // Mentres se enche, cada fila é un heap mínimo pola similitude: a raíz é o peor veciño
+    private void offer(int item, int neighbour, float score) {
+        int from = item * k;
+        int size = sizes[item];
+        if (size < k) {
+            int child = size;
+            while (child > 0) {
+                int parent = (child - 1) >> 1;
+                if (scores[from + parent] <= score) break;
+                scores[from + child] = scores[from + parent];
+                neighbours[from + child] = neighbours[from + parent];
+                child = parent;
+            }
+            scores[from + child] = score;
+            neighbours[from + child] = neighbour;
+            sizes[item] = size + 1;
+        } else if (score > scores[from]) {
+            sift(from, size, neighbour, score);
+        }
+    }
+
+    private void sift(int from, int size, int neighbour, float score) {
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) break;
+            if (child + 1 < size && scores[from + child + 1] < scores[from + child]) child++;
+            if (scores[from + child] >= score) break;
+            scores[from + parent] = scores[from + child];
+            neighbours[from + parent] = neighbours[from + child];
+            parent = child;
+        }
+        scores[from + parent] = score;
+        neighbours[from + parent] = neighbour;
+    }
+
+    // Converte o heap nunha lista ordenada de maior a menor similitude (heapsort no sitio)
+    private void order(int item) {
+        int from = item * k;
+        for (int size = sizes[item] - 1; size > 0; size--) {
+            float score = scores[from + size];
+            int neighbour = neighbours[from + size];
+            scores[from + size] = scores[from];
+            neighbours[from + size] = neighbours[from];
+            sift(from, size, neighbour, score);
+        }
+    }
+
+    static final class Settings {
+        final int k;
+        final int minSupport;
+        final int maxUserRatings;
+
+        Settings(int k, int minSupport, int maxUserRatings) {
+            this.k = k;
+            this.minSupport = minSupport;
+            this.maxUserRatings = maxUserRatings;
+        }
+    }
+
+    // Estado compartido por todas as tarefas dun cálculo
+    private static final class Computation {
+        private final RatingMatrix matrix;
+        private final Settings settings;
+        private final ItemNeighbours table;
+        private final BitSet rows;
+        private final Offers offers;
+        private final float[] norms;
+        private final BitSet heavy;
+        // Acumuladores libres deste cálculo. Non os gardamos por fío: os fíos do pool viven moito
+        // máis ca o cálculo e reterían os arrays ata o seguinte
+        private final ConcurrentLinkedQueue<Accumulator> accumulators = new ConcurrentLinkedQueue<>();
+
+        private Computation(RatingMatrix matrix, Settings settings, ItemNeighbours table, BitSet rows, Offers offers) {
+            this.matrix = matrix;
+            this.settings = settings;
+            this.table = table;
+            this.rows = rows;
+            this.offers = offers;
+
+            // Os usuarios que valoraron moitísimas películas custan o cadrado das súas valoracións
+            // e apenas achegan información sobre cada par, así que non os temos en conta
+            this.heavy = new BitSet(matrix.userCount());
+            for (int u = 0; u < matrix.userCount(); u++) {
+                if (matrix.userOffsets[u + 1] - matrix.userOffsets[u] > settings.maxUserRatings) heavy.set(u);
+            }
+
+            this.norms = new float[matrix.itemCount()];
+            for (int item = 0; item < matrix.itemCount(); item++) {
+                double sum = 0;
+                for (int p = matrix.itemOffsets[item]; p < matrix.itemOffsets[item + 1]; p++) {
+                    if (heavy.get(matrix.itemUsers[p])) continue;
+                    sum += matrix.itemValues[p] * matrix.itemValues[p];
+                }
+                norms[item] = (float) Math.sqrt(sum);
+            }
+        }
+
+        private RecursiveAction task(int from, int to) {
+            return new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    if (to - from <= LEAF) {
+                        Accumulator accumulator = accumulators.poll();
+                        if (accumulator == null) accumulator = new Accumulator(matrix.itemCount());
+                        for (int item = rows.nextSetBit(from); item >= 0 && item < to; item = rows.nextSetBit(item + 1)) {
+                            row(item, accumulator);
+                        }
+                        accumulators.offer(accumulator);
+                        return;
+                    }
+                    int middle = (from + to) >>> 1;
+                    invokeAll(task(from, middle), task(middle, to));
+                }
+            };
+        }
+
+        private void row(int item, Accumulator accumulator) {
+            if (norms[item] == 0) return;
+
+            for (int p = matrix.itemOffsets[item]; p < matrix.itemOffsets[item + 1]; p++) {
+                int user = matrix.itemUsers[p];
+                if (heavy.get(user)) continue;
+                float value = matrix.itemValues[p];
+                float mean = matrix.userMeans[user];
+                for (int q = matrix.userOffsets[user]; q < matrix.userOffsets[user + 1]; q++) {
+                    int other = matrix.userItems[q];
+                    if (other == item) continue;
+                    if (accumulator.support[other]++ == 0) accumulator.touched[accumulator.count++] = other;
+                    accumulator.dots[other] += value * (matrix.userRatings[q] - mean);
+                }
+            }
+
+            for (int t = 0; t < accumulator.count; t++) {
+                int other = accumulator.touched[t];
+                if (accumulator.support[other] >= settings.minSupport && norms[other] > 0) {
+                    float score = accumulator.dots[other] / (norms[item] * norms[other]);
+                    if (score > 0) {
+                        table.offer(item, other, score);
+                        if (offers != null && !rows.get(other)) offers.add(item, other, score);
+                    }
+                }
+                accumulator.dots[other] = 0;
+                accumulator.support[other] = 0;
+            }
+            accumulator.count = 0;
+            table.order(item);
+        }
+    }
+
+    // Acumuladores densos, un por tarefa en curso, que se limpan percorrendo só as posicións tocadas
+    private static final class Accumulator {
+        private final float[] dots;
+        private final int[] support;
+        private final int[] touched;
+        private int count;
+
+        private Accumulator(int items) {
+            this.dots = new float[items];
+            this.support = new int[items];
+            this.touched = new int[items];
+        }
+    }
+
+    // Similitudes entre películas afectadas e non afectadas atopadas durante unha actualización
+    private static final class Offers {
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private float[] scores = new float[1024];
+        private int size;
+
+        private synchronized void add(int from, int to, float score) {
+            if (size == this.from.length) {
+                int capacity = size + (size >> 1);
+                this.from = Arrays.copyOf(this.from, capacity);
+                this.to = Arrays.copyOf(this.to, capacity);
+                this.scores = Arrays.copyOf(this.scores, capacity);
+            }
+            this.from[size] = from;
+            this.to[size] = to;
+            this.scores[size] = score;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package gal.usc.etse.grei.es.project.service;
+
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+// Paxinación por cursor (keyset pagination): en lugar de saltar os N primeiros documentos
+// e contar o total da colección en cada chamada, buscamos a partir do último elemento
+// devolto empregando os campos de ordenación e o _id como desempate.
+@Service
+public class KeysetPagination {
+    private static final String ID = "_id";
+    private static final JsonWriterSettings JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    private final MongoOperations mongo;
+
+    @Autowired
+    public KeysetPagination(MongoOperations mongo) {
+        this.mongo = mongo;
+    }
+
+    public <T> KeysetSlice<T> find(Query filter, Class<T> type, int size, Sort sort, String after) {
+        if (size < 1) throw new IllegalArgumentException("The page size must be greater than zero");
+
+        Sort keyset = keyset(sort, type);
+        Document criteria = filter.getQueryObject();
+
+        // Se temos cursor, engadimos a condición para continuar a partir do último elemento
+        if (after != null && !after.isEmpty()) {
+            Document seek = seek(keyset, decode(after, keyset));
+            criteria = criteria.isEmpty() ? seek : new Document("$and", Arrays.asList(criteria, seek));
+        }
+
+        Query query = new BasicQuery(criteria, fields(filter.getFieldsObject(), keyset)).with(keyset).limit(size + 1);
+        List<T> result = mongo.find(query, type);
+
+        // Pedimos un elemento de máis para saber se hai seguinte porción sen ter que contar
+        String next = null;
+        if (result.size() > size) {
+            result = new ArrayList<>(result.subList(0, size));
+            next = encode(result.get(size - 1), keyset);
+        }
+
+        return new KeysetSlice<>(result, PageRequest.of(0, size, keyset), next);
+    }
+
+    // Reescribimos a propiedade identificadora como _id e engadimos o _id como desempate, na mesma
+    // dirección que o último campo para que un único índice {campo, _id} sirva en ambos sentidos
+    private Sort keyset(Sort sort, Class<?> type) {
+        MongoPersistentProperty idProperty = mongo.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(type).getIdProperty();
+        String idName = idProperty != null ? idProperty.getName() : ID;
+
+        List<Sort.Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            if (order.getProperty().equals(idName) || order.getProperty().equals(ID)) {
+                orders.add(new Sort.Order(order.getDirection(), ID));
+                return Sort.by(orders);
+            }
+            orders.add(order);
+        }
+        Sort.Direction tie = orders.isEmpty() ? Sort.Direction.ASC : orders.get(orders.size() - 1).getDirection();
+        orders.add(new Sort.Order(tie, ID));
+        return Sort.by(orders);
+    }
+
+    // Se a consulta está proxectada, os campos de ordenación teñen que vir na resposta para construír o cursor
+    private static Document fields(Document projection, Sort keyset) {
+        if (projection.isEmpty() || projection.containsValue(0)) return projection;
+
+        Document fields = new Document(projection);
+        for (Sort.Order order : keyset) {
+            String property = order.getProperty();
+            boolean covered = fields.keySet().stream().anyMatch(field -> property.equals(field) || property.startsWith(field + "."));
+            if (!covered) fields.append(property, 1);
+        }
+        return fields;
+    }
+
+    // Construímos (a > x) OR (a = x AND b > y) OR ... para cada campo da ordenación
+    private Document seek(Sort keyset, Document last) {
+        List<Document> branches = new ArrayList<>();
+        List<Sort.Order> orders = keyset.toList();
+
+        for (int i = 0; i < orders.size(); i++) {
+            Document branch = new Document();
+            for (int j = 0; j < i; j++) {
+                String property = orders.get(j).getProperty();
+                branch.append(property, last.get(property));
+            }
+            after(branch, orders.get(i), last.get(orders.get(i).getProperty()));
+            branches.add(branch);
+        }
+
+        return new Document("$or", branches);
+    }
+
+    // Mongo ordena os valores nulos ou ausentes antes que calquera outro, pero $gt e $lt nunca os
+    // comparan: en orde ascendente todo o que non é nulo vai despois dun nulo, e en descendente os
+    // nulos van despois de calquera valor
+    private static void after(Document branch, Sort.Order order, Object value) {
+        String property = order.getProperty();
+        if (order.isAscending()) {
+            branch.append(property, value == null ? new Document("$ne", null) : new Document("$gt", value));
+        } else if (value == null) {
+            branch.append(property, new Document("$lt", null));
+        } else {
+            branch.append("$or", Arrays.asList(
+                    new Document(property, new Document("$lt", value)),
+                    new Document(property, null)));
+        }
+    }
+
+    private String encode(Object entity, Sort keyset) {
+        Document stored = new Document();
+        mongo.getConverter().write(entity, stored);
+
+        Document values = new Document();
+        for (Sort.Order order : keyset) values.append(order.getProperty(), value(stored, order.getProperty()));
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(values.toJson(JSON).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Document decode(String cursor, Sort keyset) {
+        Document values;
+        try {
+            values = Document.parse(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+
+        // O cursor só é válido para a mesma ordenación coa que foi xerado
+        List<String> expected = new ArrayList<>();
+        keyset.forEach(order -> expected.add(order.getProperty()));
+        if (!expected.equals(new ArrayList<>(values.keySet())))
+            throw new IllegalArgumentException("The cursor does not match the requested sort");
+
+        return values;
+    }
+
+    // Lemos un campo, posiblemente aniñado (a.b.c), do documento tal e como se garda en Mongo
+    private static Object value(Document document, String path) {
+        Object current = document;
+        for (String part : path.split("\\.")) {
+            if (!(current instanceof Document)) return null;
+            current = ((Document) current).get(part);
+        }
+        return current;
+    }
+}
@@ -0,0 +1,21 @@
+package gal.usc.etse.grei.es.project.service;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+
+// Porción dun listado paxinado por cursor. Non leva total de elementos nin de páxinas,
+// só o cursor opaco co que pedir a seguinte porción.
+public class KeysetSlice<T> extends SliceImpl<T> {
+    private final String nextCursor;
+
+    public KeysetSlice(List<T> content, Pageable pageable, String nextCursor) {
+        super(content, pageable, nextCursor != null);
+        this.nextCursor = nextCursor;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
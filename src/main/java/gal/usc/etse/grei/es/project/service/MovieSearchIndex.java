@@ -0,0 +1,255 @@
+package gal.usc.etse.grei.es.project.service;
+
+import gal.usc.etse.grei.es.project.model.Film;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Índice invertido en memoria sobre o título, resumo, tagline e palabras clave das películas.
+// Substitúe as buscas CONTAINING (regex sen ancorar) que obrigaban a Mongo a percorrer
+// a colección enteira por cada filtro de título. Os cambios feitos noutras instancias ou dende
+// a importación por liña de comandos recóllense periodicamente (ver refresh).
+@Service
+public class MovieSearchIndex {
+    // Peso de cada campo no cálculo da relevancia
+    private static final float TITLE_WEIGHT = 4f;
+    private static final float TAGLINE_WEIGHT = 2f;
+    private static final float KEYWORD_WEIGHT = 2f;
+    private static final float OVERVIEW_WEIGHT = 1f;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // Marxe para as películas gardadas por instancias co reloxo atrasado
+    private static final Duration SKEW = Duration.ofMinutes(5);
+
+    private final MongoOperations mongo;
+    private final int maxCandidates;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // termo -> (id da película -> peso do termo nesa película)
+    private final NavigableMap<String, Map<String, Float>> postings = new TreeMap<>();
+    // id da película -> termos indexados, para poder retirala ao actualizar ou borrar
+    private final Map<String, Map<String, Float>> documents = new HashMap<>();
+    // Momento no que comezou a última lectura de Mongo, ou null mentres non se cargou
+    private volatile Instant loadedAt;
+
+    @Autowired
+    public MovieSearchIndex(MongoOperations mongo, @Value("${search.max-candidates:10000}") int maxCandidates) {
+        this.mongo = mongo;
+        this.maxCandidates = Math.max(1, maxCandidates);
+    }
+
+    // Cargamos o índice ao arrancar a aplicación, lendo só os campos indexados
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        Instant started = Instant.now();
+
+        lock.writeLock().lock();
+        try (CloseableIterator<Film> films = mongo.stream(fields(new Query()), Film.class)) {
+            postings.clear();
+            documents.clear();
+            films.forEachRemaining(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        loadedAt = started;
+    }
+
+    // Reindexamos as películas modificadas dende a última lectura (a importación tamén fixa
+    // lastModified). Os borrados non deixan rastro, así que se o número de películas en Mongo
+    // non cadra co do índice percorremos os ids e retiramos as que xa non existen
+    @Scheduled(fixedDelayString = "${search.refresh:30000}", initialDelayString = "${search.refresh:30000}")
+    public synchronized void refresh() {
+        if (loadedAt == null) return;
+        Instant started = Instant.now();
+
+        Query modified = fields(new Query(where("lastModified").gte(loadedAt.minus(SKEW))));
+        try (CloseableIterator<Film> films = mongo.stream(modified, Film.class)) {
+            films.forEachRemaining(this::index);
+        }
+
+        if (mongo.estimatedCount(Film.class) != size()) {
+            Set<String> indexed;
+            lock.readLock().lock();
+            try {
+                indexed = new HashSet<>(documents.keySet());
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // Só se retiran películas que xa estaban indexadas antes de ler os ids, para non
+            // perder as que se crean nesta instancia mentres tanto
+            Query ids = new Query();
+            ids.fields().include("_id");
+            try (CloseableIterator<Film> films = mongo.stream(ids, Film.class)) {
+                films.forEachRemaining(film -> indexed.remove(film.getId()));
+            }
+            indexed.forEach(this::delete);
+        }
+        loadedAt = started;
+    }
+
+    //Index one
+    public void index(Film film) {
+        if (film == null || film.getId() == null) return;
+
+        lock.writeLock().lock();
+        try {
+            remove(film.getId());
+            add(film);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Remove one
+    public void delete(String id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Devolve os ids das películas que conteñen todos os termos da consulta, ordenados por relevancia.
+    // O último termo trátase como prefixo para manter o comportamento de "contén" mentres se escribe.
+    // Só se devolven as search.max-candidates máis relevantes, para que unha consulta moi xeral
+    // (unha soa letra) non xere un filtro $in co catálogo enteiro.
+    public List<String> search(String text) {
+        List<String> terms = tokenize(text);
+        if (terms.isEmpty()) return Collections.emptyList();
+
+        lock.readLock().lock();
+        try {
+            Map<String, Float> scores = null;
+            for (int i = 0; i < terms.size(); i++) {
+                boolean prefix = i == terms.size() - 1;
+                Map<String, Float> matches = score(terms.get(i), prefix);
+
+                if (scores == null) {
+                    scores = matches;
+                } else {
+                    scores.keySet().retainAll(matches.keySet());
+                    for (Map.Entry<String, Float> entry : scores.entrySet())
+                        entry.setValue(entry.getValue() + matches.get(entry.getKey()));
+                }
+                if (scores.isEmpty()) return Collections.emptyList();
+            }
+
+            Comparator<Map.Entry<String, Float>> order = Map.Entry.<String, Float>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey());
+            List<Map.Entry<String, Float>> ranked;
+            if (scores.size() <= maxCandidates) {
+                ranked = new ArrayList<>(scores.entrySet());
+            } else {
+                // Heap co peor dos mellores arriba, para non ordenar todas as coincidencias
+                PriorityQueue<Map.Entry<String, Float>> best = new PriorityQueue<>(maxCandidates + 1, order.reversed());
+                for (Map.Entry<String, Float> entry : scores.entrySet()) {
+                    best.add(entry);
+                    if (best.size() > maxCandidates) best.poll();
+                }
+                ranked = new ArrayList<>(best);
+            }
+            ranked.sort(order);
+
+            List<String> ids = new ArrayList<>(ranked.size());
+            for (Map.Entry<String, Float> entry : ranked) ids.add(entry.getKey());
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Query fields(Query query) {
+        query.fields().include("title").include("overview").include("tagline").include("keywords");
+        return query;
+    }
+
+    // Pasa o texto a minúsculas, elimina os acentos e divídeo en termos
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) return Collections.emptyList();
+
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        List<String> terms = new ArrayList<>();
+        for (String term : SEPARATORS.split(normalized.toLowerCase(Locale.ROOT))) {
+            if (!term.isEmpty()) terms.add(term);
+        }
+        return terms;
+    }
+
+    // Puntuación tf-idf dun termo (ou de todos os termos que comezan por el) en cada película
+    private Map<String, Float> score(String term, boolean prefix) {
+        Map<String, Float> result = new HashMap<>();
+        Collection<Map<String, Float>> lists = prefix
+                ? postings.subMap(term, true, term + Character.MAX_VALUE, false).values()
+                : Optional.ofNullable(postings.get(term)).map(Collections::singleton).orElse(Collections.emptySet());
+
+        int total = Math.max(documents.size(), 1);
+        for (Map<String, Float> list : lists) {
+            float idf = (float) Math.log(1 + (double) total / list.size());
+            for (Map.Entry<String, Float> entry : list.entrySet())
+                result.merge(entry.getKey(), entry.getValue() * idf, Math::max);
+        }
+        return result;
+    }
+
+    private void add(Film film) {
+        Map<String, Float> weights = new HashMap<>();
+        collect(weights, film.getTitle(), TITLE_WEIGHT);
+        collect(weights, film.getTagline(), TAGLINE_WEIGHT);
+        collect(weights, film.getOverview(), OVERVIEW_WEIGHT);
+        if (film.getKeywords() != null) {
+            for (String keyword : film.getKeywords()) collect(weights, keyword, KEYWORD_WEIGHT);
+        }
+
+        // Normalizamos pola lonxitude para que os textos longos non dominen a relevancia
+        float norm = (float) Math.sqrt(weights.size());
+        for (Map.Entry<String, Float> entry : weights.entrySet()) {
+            float weight = entry.getValue() / norm;
+            entry.setValue(weight);
+            postings.computeIfAbsent(entry.getKey(), key -> new HashMap<>()).put(film.getId(), weight);
+        }
+        documents.put(film.getId(), weights);
+    }
+
+    private void remove(String id) {
+        Map<String, Float> weights = documents.remove(id);
+        if (weights == null) return;
+
+        for (String term : weights.keySet()) {
+            Map<String, Float> list = postings.get(term);
+            if (list == null) continue;
+            list.remove(id);
+            if (list.isEmpty()) postings.remove(term);
+        }
+    }
+
+    private static void collect(Map<String, Float> weights, String text, float weight) {
+        for (String term : tokenize(text)) weights.merge(term, weight, Float::sum);
+    }
+}
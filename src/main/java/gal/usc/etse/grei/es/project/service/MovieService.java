@@ -1,40 +1,96 @@
 package gal.usc.etse.grei.es.project.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ser.FilterProvider;
-import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.github.fge.jsonpatch.JsonPatchException;
-import gal.usc.etse.grei.es.project.configuration.SerializationConfiguration;
+import gal.usc.etse.grei.es.project.configuration.CacheConfiguration;
 import gal.usc.etse.grei.es.project.model.*;
 import gal.usc.etse.grei.es.project.model.Date;
 import gal.usc.etse.grei.es.project.repository.AssessmentRepository;
 import gal.usc.etse.grei.es.project.repository.MovieRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.*;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.util.*;
 
 @Service
 public class MovieService {
+    private static final String RATING = "rating";
+
     private final MovieRepository movies;
     private final AssessmentRepository assessments;
+    private final MongoOperations mongo;
+    private final MovieSearchIndex index;
+    private final SimilarMovieIndex similar;
+    private final KeysetPagination keyset;
+    private final PatchUtils patch;
 
     @Autowired
-    public MovieService(MovieRepository movies, AssessmentRepository assessments) {
+    public MovieService(MovieRepository movies, AssessmentRepository assessments, MongoOperations mongo, MovieSearchIndex index, SimilarMovieIndex similar, KeysetPagination keyset, PatchUtils patch) {
         this.movies = movies;
         this.assessments = assessments;
+        this.mongo = mongo;
+        this.index = index;
+        this.similar = similar;
+        this.keyset = keyset;
+        this.patch = patch;
     }
 
     //Get all with options
-    public Optional<Page<Film>> getAll(int page, int size, Sort sort, String title, List<String> keywords, List<String> genres, List<Crew> crew, List<Cast> cast, List<Producer> producers, Date releaseDate) {
+    public Optional<Page<Film>> getAll(int page, int size, Sort sort, String title, List<String> keywords, List<String> genres, List<Crew> crew, List<Cast> cast, List<Producer> producers, Date releaseDate, Date releasedFrom, Date releasedTo) {
         Pageable request = PageRequest.of(page, size, sort);
 
         ExampleMatcher matcher = ExampleMatcher.matching().withIgnoreCase().withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING);
 
-        Example<Film> filter = Example.of(new Film().setTitle(title).setKeywords(keywords).setGenres(genres).setCrew(crew).setCast(cast).setProducers(producers).setReleaseDate(releaseDate), matcher);
+        Film probe = new Film().setKeywords(keywords).setGenres(genres).setCrew(crew).setCast(cast).setProducers(producers);
+        Criteria dates = released(releaseDate, releasedFrom, releasedTo);
+        boolean filtered = keywords != null || genres != null || crew != null || cast != null || producers != null;
+
+        Page<Film> result;
+        if (title == null || title.isBlank()) {
+            Example<Film> filter = Example.of(probe.setTitle(title), matcher);
+            Query query = new Query(new Criteria().alike(filter));
+            if (dates != null) query.addCriteria(dates);
+            result = page(query, request);
+        } else {
+            // O título resólvese co índice invertido; o resto de filtros aplícaos Mongo sobre os candidatos
+            List<Criteria> filters = new ArrayList<>();
+            if (filtered) filters.add(new Criteria().alike(Example.of(probe, matcher)));
+            if (dates != null) filters.add(dates);
+            result = search(title, filters, request);
+        }
+
+        if(result.isEmpty())
+            return Optional.empty();
+
+        else return Optional.of(result);
+    }
 
-        Page<Film> result = movies.findAll(filter, request);
+    //Get all after cursor
+    public Optional<KeysetSlice<Film>> getAllAfter(String after, int size, Sort sort, String title, List<String> keywords, List<String> genres, List<Crew> crew, List<Cast> cast, List<Producer> producers, Date releaseDate, Date releasedFrom, Date releasedTo) {
+        ExampleMatcher matcher = ExampleMatcher.matching().withIgnoreCase().withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING);
+        Film probe = new Film().setKeywords(keywords).setGenres(genres).setCrew(crew).setCast(cast).setProducers(producers);
+
+        Query filter = new Query();
+        if (title == null || title.isBlank()) {
+            probe.setTitle(title);
+        } else {
+            List<String> ranked = index.search(title);
+            if (ranked.isEmpty()) return Optional.empty();
+            filter.addCriteria(Criteria.where("_id").in(ranked));
+        }
+        filter.addCriteria(new Criteria().alike(Example.of(probe, matcher)));
+        Criteria dates = released(releaseDate, releasedFrom, releasedTo);
+        if (dates != null) filter.addCriteria(dates);
+
+        KeysetSlice<Film> result = keyset.find(summary(filter), Film.class, size, sort, after);
 
         if(result.isEmpty())
             return Optional.empty();
@@ -42,6 +98,70 @@ public class MovieService {
         else return Optional.of(result);
     }
 
+    // As datas fíltranse pola data empaquetada (yyyymmdd), que ten índice, en lugar de comparar
+    // o documento aniñado. Unha data exacta é un rango dun só día
+    private static Criteria released(Date exact, Date from, Date to) {
+        Integer lower = Date.key(exact != null ? exact : from);
+        Integer upper = Date.key(exact != null ? exact : to);
+        if (lower == null && upper == null) return null;
+
+        Criteria criteria = Criteria.where("releaseDateKey");
+        if (lower != null) criteria.gte(lower);
+        if (upper != null) criteria.lte(upper);
+        return criteria;
+    }
+
+    //Full-text search
+    private Page<Film> search(String text, List<Criteria> filters, Pageable request) {
+        List<String> ranked = index.search(text);
+        if (ranked.isEmpty()) return Page.empty(request);
+
+        Query query = new Query(Criteria.where("_id").in(ranked));
+        filters.forEach(query::addCriteria);
+
+        // Se o cliente pide unha ordenación explícita delegámola en Mongo
+        if (request.getSort().isSorted()) return page(query, request);
+
+        // Se non, ordenamos por relevancia: só precisamos os ids dos candidatos que pasan os filtros
+        if (!filters.isEmpty()) {
+            Query ids = Query.of(query);
+            ids.fields().include("_id");
+            Set<String> matching = new HashSet<>();
+            for (Film film : mongo.find(ids, Film.class)) matching.add(film.getId());
+            ranked.removeIf(id -> !matching.contains(id));
+        }
+
+        int from = (int) Math.min(request.getOffset(), ranked.size());
+        int to = Math.min(from + request.getPageSize(), ranked.size());
+        List<String> pageIds = ranked.subList(from, to);
+
+        Map<String, Film> found = new HashMap<>();
+        for (Film film : mongo.find(summary(new Query(Criteria.where("_id").in(pageIds))), Film.class)) found.put(film.getId(), film);
+
+        List<Film> content = new ArrayList<>(pageIds.size());
+        for (String id : pageIds) {
+            Film film = found.get(id);
+            if (film != null) content.add(film);
+        }
+        return new PageImpl<>(content, request, ranked.size());
+    }
+
+    // Lemos só os campos da vista resumida e contamos o total só cando fai falla
+    private Page<Film> page(Query filter, Pageable request) {
+        List<Film> content = mongo.find(summary(Query.of(filter).with(request)), Film.class);
+        return PageableExecutionUtils.getPage(content, request, () -> mongo.count(filter, Film.class));
+    }
+
+    private static Query summary(Query query) {
+        for (String field : Views.FILM_SUMMARY) query.fields().include(field);
+        return query;
+    }
+
+    //Export all
+    public CloseableIterator<Film> stream(Instant modifiedSince) {
+        return mongo.stream(ExportQuery.modifiedSince(modifiedSince), Film.class);
+    }
+
     //Get assessments
     public Optional<Page<Assessment>> getAssessments(int page, int size, Sort sort, String id) {
         Pageable request = PageRequest.of(page, size, sort);
@@ -52,38 +172,70 @@ public class MovieService {
         return Optional.of(result);
     }
 
+    //Get assessments after cursor
+    public Optional<KeysetSlice<Assessment>> getAssessmentsAfter(String after, int size, Sort sort, String id) {
+        KeysetSlice<Assessment> result = keyset.find(new Query(Criteria.where("movie").is(id)), Assessment.class, size, sort, after);
+
+        if(result.isEmpty())
+            return Optional.empty();
+        return Optional.of(result);
+    }
+
     //Create one
     public Optional<Film> createMovie(Film film) {
-        return Optional.of(movies.insert(film));
+        // O resumo das valoracións só o mantén o servizo de valoracións
+        Film created = movies.insert(film.setRating(null));
+        index.index(created);
+        similar.index(created);
+        return Optional.of(created);
     }
 
     //Update one
+    // O resumo das valoracións non se substitúe: o servizo de valoracións cámbiao con $inc en
+    // calquera momento e gardar o que se leu antes desfaría eses cambios
+    @CacheEvict(cacheNames = CacheConfiguration.FILMS, key = "#film.id")
     public Optional<Film> updateMovie(Film film){
-        Film filmEdit = movies.findById(film.getId()).get();
-        filmEdit.updateMovie(film);
-        return Optional.of(this.movies.save(filmEdit));
+        Optional<Film> saved = patch.replace(film.getId(), film, RATING);
+        saved.ifPresent(index::index);
+        saved.ifPresent(similar::index);
+        return saved;
     }
 
     //Modify one
+    @CacheEvict(cacheNames = CacheConfiguration.FILMS, key = "#id")
     public Optional<Film> modifyMovie(String id,  List<Map<String, Object>> updates) throws JsonPatchException {
+        Optional<Film> updated = patch.patch(id, Film.class, updates, RATING);
+        updated.ifPresent(index::index);
+        updated.ifPresent(similar::index);
+        return updated;
+    }
 
-        FilterProvider filterProvider= new SimpleFilterProvider().setFailOnUnknownId(false);
-        new SerializationConfiguration().jsonCustomizer();
-        Film movieEdit = movies.findById(id).get();
-        ObjectMapper mapper=new ObjectMapper();
-        mapper.setFilterProvider(filterProvider);
-        PatchUtils patch = new PatchUtils(mapper);
-        Film updated = patch.patch(movieEdit, updates);
-        return Optional.of(this.movies.save(updated));
+    //Get similar
+    public Optional<List<SimilarMovie>> getSimilar(String id, int size) {
+        Map<String, Float> ranked = similar.similar(id, size);
+        if (ranked == null || ranked.isEmpty()) return Optional.empty();
+
+        Map<String, String> titles = MovieTitles.of(mongo, ranked.keySet());
+        List<SimilarMovie> result = new ArrayList<>();
+        ranked.forEach((movie, similarity) -> {
+            if (titles.containsKey(movie)) result.add(new SimilarMovie(movie, titles.get(movie), similarity));
+        });
+
+        if (result.isEmpty()) return Optional.empty();
+        return Optional.of(result);
     }
 
     //Get one
+    @Cacheable(cacheNames = CacheConfiguration.FILMS, key = "#id", unless = "#result == null")
     public Optional<Film> get(String id) {
         return movies.findById(id);
     }
 
     //Delete one
+    @CacheEvict(cacheNames = CacheConfiguration.FILMS, key = "#id")
     public void delete(String id) {
         movies.deleteById(id);
+        index.delete(id);
+        similar.delete(id);
     }
 }
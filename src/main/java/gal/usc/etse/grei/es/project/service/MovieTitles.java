@@ -0,0 +1,25 @@
+package gal.usc.etse.grei.es.project.service;
+
+import gal.usc.etse.grei.es.project.model.Film;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Títulos das películas recomendadas, nunha única consulta. As que xa non existen non aparecen
+final class MovieTitles {
+    private MovieTitles() {
+    }
+
+    static Map<String, String> of(MongoOperations mongo, Collection<String> ids) {
+        Query query = new Query(where("_id").in(ids));
+        query.fields().include("title");
+        Map<String, String> titles = new HashMap<>();
+        for (Film film : mongo.find(query, Film.class)) titles.put(film.getId(), film.getTitle());
+        return titles;
+    }
+}
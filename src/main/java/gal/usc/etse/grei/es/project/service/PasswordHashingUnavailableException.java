@@ -0,0 +1,11 @@
+package gal.usc.etse.grei.es.project.service;
+
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+
+// O grupo de fíos dedicado ao cálculo de contrasinais está saturado: a petición debe
+// rexeitarse cun 503 en lugar de quedar esperando e bloquear outro fío do servidor
+public class PasswordHashingUnavailableException extends InternalAuthenticationServiceException {
+    public PasswordHashingUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
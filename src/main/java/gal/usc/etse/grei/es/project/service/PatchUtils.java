@@ -1,21 +1,42 @@
 package gal.usc.etse.grei.es.project.service;
 
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
+import gal.usc.etse.grei.es.project.model.DerivedFrom;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Map;
+import java.lang.reflect.Field;
+import java.util.*;
 
 @Service
 public class PatchUtils {
+    private static final int APPEND = -1;
+
     private final ObjectMapper mapper;
+    private final MongoOperations mongo;
+    private final ApplicationEventPublisher events;
     @Autowired
-    public PatchUtils(ObjectMapper mapper) {
+    public PatchUtils(ObjectMapper mapper, MongoOperations mongo, ApplicationEventPublisher events) {
         this.mapper = mapper;
+        this.mongo = mongo;
+        this.events = events;
     }
     @SuppressWarnings("unchecked")
     public <T> T patch(T data, List<Map<String, Object>> updates) throws JsonPatchException {
@@ -28,4 +49,212 @@ public class PatchUtils {
         // Volvemos a transformar o JSON nunha instancia de usuario empregando Jackson
         return (T) mapper.convertValue(updatedJson, data.getClass());
     }
+
+    // Aplica o parche directamente en Mongo cando todas as operacións se poden traducir a
+    // $set/$unset/$push, sen ler nin reescribir o documento enteiro. Para o resto (move, copy,
+    // test, borrar elementos dun array por posición...) lemos, parcheamos e gardamos o documento
+    // sen tocar os campos preserved (ver replace).
+    // A actualización directa só se aplica se o documento cumpre as condicións que o RFC 6902 esixe
+    // a cada operación (que exista o campo a substituír, que a posición estea dentro do array...);
+    // se non, seguimos polo camiño lento para que a biblioteca de JSON Patch dea o erro.
+    public <T> Optional<T> patch(Object id, Class<T> type, List<Map<String, Object>> updates, String... preserved) throws JsonPatchException {
+        Query query = Query.query(Criteria.where("_id").is(id));
+        Optional<Compiled> compiled = compile(type, updates);
+
+        if (compiled.isPresent()) {
+            Query guarded = Query.query(Criteria.where("_id").is(id));
+            List<Criteria> preconditions = compiled.get().preconditions;
+            if (!preconditions.isEmpty()) guarded.addCriteria(new Criteria().andOperator(preconditions.toArray(new Criteria[0])));
+
+            T updated = mongo.findAndModify(guarded, compiled.get().update, FindAndModifyOptions.options().returnNew(true), type);
+            if (updated != null) return Optional.of(updated);
+        }
+
+        T current = mongo.findOne(query, type);
+        if (current == null) return Optional.empty();
+        return replace(id, patch(current, updates), preserved);
+    }
+
+    // Substitúe o documento campo a campo cun $set/$unset en lugar de gardalo enteiro, sen tocar
+    // os campos preserved: os que o servidor mantén con actualizacións atómicas (como o resumo
+    // das valoracións dunha película) non se pisan cun valor lido antes. Devolve baleiro se o
+    // documento xa non existe.
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> replace(Object id, T data, String... preserved) {
+        Class<T> type = (Class<T>) data.getClass();
+        // Os listeners que calculan campos derivados reciben o mesmo evento que nun save
+        events.publishEvent(new BeforeConvertEvent<>(data, mongo.getCollectionName(type)));
+        Document document = new Document();
+        mongo.getConverter().write(data, document);
+
+        Set<String> skipped = new HashSet<>(Arrays.asList(preserved));
+        Update update = new Update();
+        for (MongoPersistentProperty property : mongo.getConverter().getMappingContext().getRequiredPersistentEntity(type)) {
+            String key = property.getFieldName();
+            if (property.isIdProperty() || skipped.contains(key)) continue;
+            // As actualizacións directas non pasan pola auditoría de Spring Data
+            if (property.isAnnotationPresent(LastModifiedDate.class)) update.currentDate(key);
+            else if (document.containsKey(key)) update.set(key, document.get(key));
+            else update.unset(key);
+        }
+
+        Query query = Query.query(Criteria.where("_id").is(id));
+        return Optional.ofNullable(mongo.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), type));
+    }
+
+    private Optional<Compiled> compile(Class<?> type, List<Map<String, Object>> updates) {
+        Update update = new Update();
+        List<Criteria> preconditions = new ArrayList<>();
+        List<String> touched = new ArrayList<>();
+
+        for (Map<String, Object> operation : updates) {
+            Object op = operation.get("op");
+            Object path = operation.get("path");
+            if (!(op instanceof String) || !(path instanceof String)) return Optional.empty();
+
+            Target target = resolve(type, (String) path);
+            if (target == null) return Optional.empty();
+
+            // Dúas operacións sobre o mesmo campo (ou sobre un campo e outro que contén) non
+            // se poden expresar nunha soa actualización de Mongo
+            for (String other : touched) {
+                if (other.equals(target.key) || other.startsWith(target.key + ".") || target.key.startsWith(other + "."))
+                    return Optional.empty();
+            }
+            touched.add(target.key);
+
+            switch ((String) op) {
+                case "add":
+                    if (!operation.containsKey("value")) return Optional.empty();
+                    Object added = mapper.convertValue(operation.get("value"), target.type);
+                    if (target.index == null) {
+                        // O pai ten que existir: $set crearíao
+                        int parent = target.key.lastIndexOf('.');
+                        if (parent > 0) preconditions.add(Criteria.where(target.key.substring(0, parent)).type(JsonSchemaObject.Type.OBJECT));
+                        update.set(target.key, added);
+                    } else {
+                        // O array ten que existir e a posición non pode pasar do final: $push engadiría ao final
+                        preconditions.add(Criteria.where(target.key).type(JsonSchemaObject.Type.ARRAY));
+                        if (target.index > 0) preconditions.add(Criteria.where(target.key + "." + (target.index - 1)).exists(true));
+                        if (target.index == APPEND) update.push(target.key).value(added);
+                        else update.push(target.key).atPosition(target.index).value(added);
+                    }
+                    break;
+                case "replace":
+                    if (!operation.containsKey("value") || (target.index != null && target.index == APPEND)) return Optional.empty();
+                    Object replaced = mapper.convertValue(operation.get("value"), target.type);
+                    // O campo ou a posición teñen que existir: $set crearía o campo ou enchería o array con nulos
+                    String replacedKey = target.index == null ? target.key : target.key + "." + target.index;
+                    preconditions.add(Criteria.where(replacedKey).exists(true));
+                    update.set(replacedKey, replaced);
+                    break;
+                case "remove":
+                    // Mongo non ten un operador para borrar unha posición dun array
+                    if (target.index != null) return Optional.empty();
+                    preconditions.add(Criteria.where(target.key).exists(true));
+                    update.unset(target.key);
+                    break;
+                default:
+                    return Optional.empty();
+            }
+        }
+
+        if (touched.isEmpty()) return Optional.empty();
+
+        // Se cambia un campo do que se calcula outro, o documento ten que gardarse enteiro
+        MongoPersistentEntity<?> entity = mongo.getConverter().getMappingContext().getPersistentEntity(type);
+        if (entity != null && touchesDerivedSource(entity, touched)) return Optional.empty();
+
+        // As actualizacións directas non pasan pola auditoría de Spring Data
+        MongoPersistentProperty modified = entity != null ? entity.getPersistentProperty(LastModifiedDate.class) : null;
+        if (modified != null) update.currentDate(modified.getFieldName());
+
+        return Optional.of(new Compiled(update, preconditions));
+    }
+
+    // Traduce un JSON Pointer (/releaseDate/year, /genres/-, /cast/0...) ao nome do campo en Mongo
+    // e ao tipo Java do valor nesa ruta. Devolve null se a ruta non se corresponde cun campo coñecido.
+    private Target resolve(Class<?> type, String pointer) {
+        if (!pointer.startsWith("/")) return null;
+
+        MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> context = mongo.getConverter().getMappingContext();
+        MongoPersistentEntity<?> entity = context.getPersistentEntity(type);
+        JavaType javaType = mapper.constructType(type);
+        List<String> keys = new ArrayList<>();
+
+        String[] tokens = pointer.substring(1).split("/", -1);
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i].replace("~1", "/").replace("~0", "~");
+
+            // Só admitimos posicións dun array como último elemento da ruta
+            if (javaType.isCollectionLikeType() || javaType.isArrayType()) {
+                if (i != tokens.length - 1 || keys.isEmpty()) return null;
+                Integer index = index(token);
+                if (index == null) return null;
+                return new Target(String.join(".", keys), index, javaType.getContentType());
+            }
+
+            if (entity == null) return null;
+            MongoPersistentProperty property = entity.getPersistentProperty(token);
+            if (property == null || property.isIdProperty() || property.isAnnotationPresent(LastModifiedDate.class)
+                    || property.isAnnotationPresent(DerivedFrom.class)) return null;
+
+            Field field = property.getField();
+            javaType = field != null
+                    ? mapper.getTypeFactory().constructType(field.getGenericType())
+                    : mapper.constructType(property.getType());
+            keys.add(property.getFieldName());
+            entity = context.getPersistentEntity(property.getActualType());
+        }
+
+        return new Target(String.join(".", keys), null, javaType);
+    }
+
+    private static boolean touchesDerivedSource(MongoPersistentEntity<?> entity, List<String> touched) {
+        for (MongoPersistentProperty property : entity) {
+            DerivedFrom derived = property.findAnnotation(DerivedFrom.class);
+            if (derived == null) continue;
+            for (String source : derived.value()) {
+                for (String key : touched) {
+                    if (key.equals(source) || key.startsWith(source + ".")) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Integer index(String token) {
+        if ("-".equals(token)) return APPEND;
+        if (token.isEmpty() || (token.length() > 1 && token.startsWith("0"))) return null;
+        for (char c : token.toCharArray()) {
+            if (!Character.isDigit(c)) return null;
+        }
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static final class Compiled {
+        private final Update update;
+        private final List<Criteria> preconditions;
+
+        private Compiled(Update update, List<Criteria> preconditions) {
+            this.update = update;
+            this.preconditions = preconditions;
+        }
+    }
+
+    private static final class Target {
+        private final String key;
+        private final Integer index;
+        private final JavaType type;
+
+        private Target(String key, Integer index, JavaType type) {
+            this.key = key;
+            this.index = index;
+            this.type = type;
+        }
+    }
 }
@@ -0,0 +1,199 @@
+package gal.usc.etse.grei.es.project.service;
+
+import com.mongodb.client.MongoCursor;
+import gal.usc.etse.grei.es.project.model.Assessment;
+import gal.usc.etse.grei.es.project.model.Recommendation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Ordenación personalizada con factorización de matrices. Os factores adéstranse con ALS en
+// paralelo, gárdanse nun ficheiro binario (para arrancar sen volver adestrar) e as películas
+// indéxanse nun HNSW, polo que cada petición só visita unha pequena parte do catálogo.
+// O modelo novo substitúe ao anterior de golpe, sen deter as peticións en curso.
+@Service
+public class RankingService implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(RankingService.class);
+    private static final long SEED = 42;
+
+    private final MongoOperations mongo;
+    private final ForkJoinPool pool;
+    private final FactorModel.Settings settings;
+    private final int links;
+    private final int efConstruction;
+    private final int efSearch;
+    private final Path file;
+    private final AtomicReference<Model> model = new AtomicReference<>();
+    private final ReentrantLock training = new ReentrantLock();
+    private final Timer trainTimer;
+    private final Timer indexTimer;
+    private final Timer serveTimer;
+
+    @Autowired
+    public RankingService(
+            MongoOperations mongo,
+            MeterRegistry registry,
+            @Value("${ranking.factors:32}") int factors,
+            @Value("${ranking.iterations:10}") int iterations,
+            @Value("${ranking.lambda:0.05}") float lambda,
+            @Value("${ranking.hnsw.m:16}") int links,
+            @Value("${ranking.hnsw.ef-construction:200}") int efConstruction,
+            @Value("${ranking.hnsw.ef-search:100}") int efSearch,
+            @Value("${ranking.model.path:ranking/factors.bin}") String file,
+            @Value("${ranking.parallelism:0}") int parallelism
+    ) {
+        this.mongo = mongo;
+        this.settings = new FactorModel.Settings(factors, iterations, lambda, SEED);
+        this.links = links;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.file = Paths.get(file);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ranking-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
+        this.trainTimer = Timer.builder("ranking.train").register(registry);
+        this.indexTimer = Timer.builder("ranking.index").register(registry);
+        this.serveTimer = Timer.builder("ranking.serve").register(registry);
+        Gauge.builder("ranking.users", model, current -> current.get() == null ? 0 : current.get().factors.users.size()).register(registry);
+        Gauge.builder("ranking.movies", model, current -> current.get() == null ? 0 : current.get().index.size()).register(registry);
+        Gauge.builder("ranking.rmse", model, current -> current.get() == null ? Double.NaN : current.get().factors.rmse).register(registry);
+    }
+
+    // Se hai un modelo gardado úsase ao momento; se non, adéstrase en segundo plano
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        pool.execute(() -> {
+            try {
+                if (Files.isReadable(file)) {
+                    try {
+                        swap(FactorModel.read(file));
+                        return;
+                    } catch (IOException e) {
+                        logger.warn("Could not read the ranking model from {}, training a new one", file, e);
+                    }
+                }
+                train();
+            } catch (RuntimeException e) {
+                logger.error("Could not build the ranking model", e);
+            }
+        });
+    }
+
+    // Mentres non haxa un modelo cargado non podemos responder
+    public boolean isReady() {
+        return model.get() != null;
+    }
+
+    //Train
+    @Scheduled(cron = "${ranking.train.cron:0 0 6 * * *}")
+    public void train() {
+        if (!training.tryLock()) return;
+        try {
+            FactorModel factors = trainTimer.record(() -> {
+                RatingMatrix matrix;
+                try (MongoCursor<Document> rows = RatingMatrix.rows(mongo, new Document())) {
+                    matrix = RatingMatrix.load(rows);
+                }
+                return FactorModel.train(matrix, settings, pool);
+            });
+            logger.info("Ranking model trained on {} users and {} movies, rmse {}",
+                    factors.users.size(), factors.items.size(), factors.rmse);
+
+            try {
+                factors.write(file);
+            } catch (IOException e) {
+                logger.warn("Could not save the ranking model to {}", file, e);
+            }
+            swap(factors);
+        } finally {
+            training.unlock();
+        }
+    }
+
+    //Rank
+    public Optional<List<Recommendation>> rank(String email, int size) {
+        Model current = model.get();
+        if (current == null) return Optional.empty();
+
+        float[] user = current.factors.user(email);
+        if (user == null) return Optional.empty();
+
+        return serveTimer.record(() -> {
+            // As películas xa valoradas non se recomendan: pedimos ao índice tantas de máis
+            Query query = new Query(where("user").is(email));
+            query.fields().include("movie");
+            Set<String> rated = new HashSet<>();
+            for (Assessment assessment : mongo.find(query, Assessment.class)) rated.add(assessment.getMovie());
+
+            int wanted = Math.min(current.index.size(), size + rated.size());
+            int[] nodes = current.index.search(user, wanted, Math.max(efSearch, wanted));
+
+            List<String> ids = new ArrayList<>();
+            List<Float> scores = new ArrayList<>();
+            for (int node : nodes) {
+                String movie = current.factors.items.name(node);
+                if (rated.contains(movie)) continue;
+                ids.add(movie);
+                scores.add(Math.max(1, Math.min(10, current.factors.predict(user, node))));
+                if (ids.size() == size) break;
+            }
+
+            Map<String, String> titles = MovieTitles.of(mongo, ids);
+            List<Recommendation> result = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (titles.containsKey(ids.get(i))) result.add(new Recommendation(ids.get(i), titles.get(ids.get(i)), scores.get(i)));
+            }
+
+            if (result.isEmpty()) return Optional.<List<Recommendation>>empty();
+            return Optional.of(result);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    private void swap(FactorModel factors) {
+        HnswIndex index = indexTimer.record(() ->
+                HnswIndex.build(factors.itemFactors, factors.items.size(), factors.rank, links, efConstruction, SEED));
+        model.set(new Model(factors, index));
+    }
+
+    private static final class Model {
+        private final FactorModel factors;
+        private final HnswIndex index;
+
+        private Model(FactorModel factors, HnswIndex index) {
+            this.factors = factors;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package gal.usc.etse.grei.es.project.service;
+
+import com.mongodb.client.MongoCursor;
+import gal.usc.etse.grei.es.project.model.Assessment;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import java.util.*;
+
+// Matriz dispersa de valoracións (usuario x película) en formato CSR, gardada en arrays primitivos
+// en lugar dun obxecto por valoración. Tense por filas (as películas de cada usuario, ordenadas)
+// e por columnas (os usuarios de cada película, coa valoración xa centrada na media do usuario),
+// que é o que precisa a similitude coseno axustada. É inmutable: os cambios crean outra matriz.
+final class RatingMatrix {
+    private static final int MIN_RATING = 1;
+    private static final int MAX_RATING = 10;
+    private static final int BATCH = 10_000;
+
+    final Dictionary users;
+    final Dictionary items;
+
+    // Filas: userItems[userOffsets[u] .. userOffsets[u + 1]) son as películas valoradas por u
+    final int[] userOffsets;
+    final int[] userItems;
+    final byte[] userRatings;
+    final float[] userMeans;
+
+    // Columnas: itemUsers[itemOffsets[i] .. itemOffsets[i + 1]) son os usuarios que valoraron i
+    final int[] itemOffsets;
+    final int[] itemUsers;
+    final float[] itemValues;
+
+    private RatingMatrix(Dictionary users, Dictionary items, int[] userOffsets, int[] userItems, byte[] userRatings) {
+        this.users = users;
+        this.items = items;
+        this.userOffsets = userOffsets;
+        this.userItems = userItems;
+        this.userRatings = userRatings;
+
+        int userCount = users.size();
+        int itemCount = items.size();
+
+        this.userMeans = new float[userCount];
+        for (int u = 0; u < userCount; u++) {
+            long sum = 0;
+            for (int p = userOffsets[u]; p < userOffsets[u + 1]; p++) sum += userRatings[p];
+            int count = userOffsets[u + 1] - userOffsets[u];
+            userMeans[u] = count > 0 ? (float) sum / count : 0;
+        }
+
+        // Trasposición por conteo: como percorremos os usuarios en orde, cada columna queda ordenada
+        this.itemOffsets = new int[itemCount + 1];
+        for (int p = 0; p < userItems.length; p++) itemOffsets[userItems[p] + 1]++;
+        for (int i = 0; i < itemCount; i++) itemOffsets[i + 1] += itemOffsets[i];
+
+        this.itemUsers = new int[userItems.length];
+        this.itemValues = new float[userItems.length];
+        int[] next = Arrays.copyOf(itemOffsets, itemCount);
+        for (int u = 0; u < userCount; u++) {
+            for (int p = userOffsets[u]; p < userOffsets[u + 1]; p++) {
+                int position = next[userItems[p]]++;
+                itemUsers[position] = u;
+                itemValues[position] = userRatings[p] - userMeans[u];
+            }
+        }
+    }
+
+    // Valoracións que cumpren o filtro como documentos {user, movie, rating}, sen pasar polo mapeador
+    static MongoCursor<Document> rows(MongoOperations mongo, Document filter) {
+        return mongo.getCollection(mongo.getCollectionName(Assessment.class))
+                .find(filter)
+                .projection(new Document("_id", 0).append("user", 1).append("movie", 1).append("rating", 1))
+                .batchSize(BATCH)
+                .iterator();
+    }
+
+    // Constrúe a matriz a partir de documentos {user, movie, rating}
+    static RatingMatrix load(Iterator<Document> rows) {
+        Dictionary users = new Dictionary();
+        Dictionary items = new Dictionary();
+        return fromSorted(users, items, pack(rows, users, items), 0, users.size(), null, null);
+    }
+
+    // Nova matriz coas filas dos usuarios indicados substituídas polos documentos dados
+    // (que teñen que ser todas as valoracións actuais deses usuarios)
+    RatingMatrix withUsers(Collection<String> reloaded, Iterator<Document> rows) {
+        Dictionary users = this.users.copy();
+        Dictionary items = this.items.copy();
+        BitSet replaced = new BitSet();
+        for (String user : reloaded) replaced.set(users.id(user));
+
+        long[] fresh = pack(rows, users, items);
+        return fromSorted(users, items, fresh, this.users.size(), users.size(), replaced, this);
+    }
+
+    // Películas valoradas por algún dos usuarios indicados
+    BitSet itemsOf(Collection<String> names) {
+        BitSet result = new BitSet(items.size());
+        for (String name : names) {
+            Integer u = users.find(name);
+            if (u == null) continue;
+            for (int p = userOffsets[u]; p < userOffsets[u + 1]; p++) result.set(userItems[p]);
+        }
+        return result;
+    }
+
+    int userCount() {
+        return users.size();
+    }
+
+    int itemCount() {
+        return items.size();
+    }
+
+    int size() {
+        return userItems.length;
+    }
+
+    // Cada valoración nun long: usuario nos 32 bits altos, película nos 28 seguintes e puntuación
+    // nos 4 baixos, de forma que ordenar os longs é ordenar por (usuario, película)
+    private static long[] pack(Iterator<Document> rows, Dictionary users, Dictionary items) {
+        long[] packed = new long[1024];
+        int size = 0;
+        while (rows.hasNext()) {
+            Document row = rows.next();
+            Object user = row.get("user");
+            Object movie = row.get("movie");
+            Object rating = row.get("rating");
+            if (!(user instanceof String) || !(movie instanceof String) || !(rating instanceof Number)) continue;
+            int value = ((Number) rating).intValue();
+            if (value < MIN_RATING || value > MAX_RATING) continue;
+
+            if (size == packed.length) packed = Arrays.copyOf(packed, size + (size >> 1));
+            packed[size++] = ((long) users.id((String) user) << 32) | ((long) items.id((String) movie) << 4) | value;
+        }
+        long[] result = Arrays.copyOf(packed, size);
+        Arrays.parallelSort(result);
+        return result;
+    }
+
+    // Monta as filas mesturando as do usuario na matriz anterior (se non se substitúen) coas novas.
+    // Se un usuario valorou varias veces a mesma película queda só unha (a de maior puntuación)
+    private static RatingMatrix fromSorted(Dictionary users, Dictionary items, long[] fresh,
+                                           int previousUsers, int userCount, BitSet replaced, RatingMatrix previous) {
+        int capacity = fresh.length;
+        if (previous != null) {
+            for (int u = 0; u < previousUsers; u++) {
+                if (!replaced.get(u)) capacity += previous.userOffsets[u + 1] - previous.userOffsets[u];
+            }
+        }
+
+        int[] offsets = new int[userCount + 1];
+        int[] rowItems = new int[capacity];
+        byte[] rowRatings = new byte[capacity];
+        int size = 0;
+        int cursor = 0;
+
+        for (int u = 0; u < userCount; u++) {
+            offsets[u] = size;
+            if (previous != null && u < previousUsers && !replaced.get(u)) {
+                int from = previous.userOffsets[u];
+                int length = previous.userOffsets[u + 1] - from;
+                System.arraycopy(previous.userItems, from, rowItems, size, length);
+                System.arraycopy(previous.userRatings, from, rowRatings, size, length);
+                size += length;
+                continue;
+            }
+            while (cursor < fresh.length && (int) (fresh[cursor] >>> 32) == u) {
+                long entry = fresh[cursor++];
+                int item = (int) ((entry >>> 4) & 0x0FFFFFFF);
+                byte rating = (byte) (entry & 0xF);
+                if (size > offsets[u] && rowItems[size - 1] == item) {
+                    rowRatings[size - 1] = rating;
+                } else {
+                    rowItems[size] = item;
+                    rowRatings[size] = rating;
+                    size++;
+                }
+            }
+        }
+        offsets[userCount] = size;
+
+        return new RatingMatrix(users, items, offsets, Arrays.copyOf(rowItems, size), Arrays.copyOf(rowRatings, size));
+    }
+
+    // Correspondencia entre identificadores de Mongo e índices consecutivos. Só crece, polo que
+    // os índices dunha matriz seguen sendo válidos nas que se crean a partir dela
+    static final class Dictionary {
+        private final Map<String, Integer> ids;
+        private final List<String> names;
+
+        Dictionary() {
+            this(new HashMap<>(), new ArrayList<>());
+        }
+
+        private Dictionary(Map<String, Integer> ids, List<String> names) {
+            this.ids = ids;
+            this.names = names;
+        }
+
+        int id(String name) {
+            Integer id = ids.get(name);
+            if (id != null) return id;
+            ids.put(name, names.size());
+            names.add(name);
+            return names.size() - 1;
+        }
+
+        Integer find(String name) {
+            return ids.get(name);
+        }
+
+        String name(int id) {
+            return names.get(id);
+        }
+
+        int size() {
+            return names.size();
+        }
+
+        Dictionary copy() {
+            return new Dictionary(new HashMap<>(ids), new ArrayList<>(names));
+        }
+    }
+}
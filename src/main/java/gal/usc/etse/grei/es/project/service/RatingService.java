@@ -0,0 +1,198 @@
+package gal.usc.etse.grei.es.project.service;
+
+import gal.usc.etse.grei.es.project.configuration.CacheConfiguration;
+import gal.usc.etse.grei.es.project.model.Assessment;
+import gal.usc.etse.grei.es.project.model.Film;
+import gal.usc.etse.grei.es.project.model.Rating;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// Mantén na propia película o resumo das súas valoracións (número, suma, media e histograma),
+// de forma que a ficha e a ordenación por valoración non teñan que agregar as valoracións en cada petición.
+@Service
+public class RatingService {
+    private static final Logger logger = LoggerFactory.getLogger(RatingService.class);
+
+    private final MongoOperations mongo;
+
+    @Autowired
+    public RatingService(MongoOperations mongo) {
+        this.mongo = mongo;
+    }
+
+    //Add one
+    @CacheEvict(cacheNames = CacheConfiguration.FILMS, key = "#movie", condition = "#movie != null")
+    public void add(String movie, Integer rating) {
+        apply(movie, rating, 1);
+    }
+
+    //Add many
+    // Para as cargas masivas: agrupamos as valoracións por película e facemos un único $inc por película
+    @CacheEvict(cacheNames = CacheConfiguration.FILMS, allEntries = true)
+    public void addAll(Collection<Assessment> assessments) {
+        Map<String, Rating> deltas = new HashMap<>();
+        for (Assessment assessment : assessments) {
+            if (assessment.getMovie() == null || assessment.getRating() == null) continue;
+            Rating delta = deltas.computeIfAbsent(assessment.getMovie(), key -> new Rating(0, 0, new TreeMap<>()));
+            delta.setCount(delta.getCount() + 1)
+                    .setSum(delta.getSum() + assessment.getRating())
+                    .getHistogram().merge(String.valueOf(assessment.getRating()), 1L, Long::sum);
+        }
+        deltas.forEach((movie, delta) -> apply(movie, delta.getCount(), delta.getSum(), delta.getHistogram()));
+    }
+
+    //Remove one
+    @CacheEvict(cacheNames = CacheConfiguration.FILMS, key = "#movie", condition = "#movie != null")
+    public void remove(String movie, Integer rating) {
+        apply(movie, rating, -1);
+    }
+
+    //Replace one
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfiguration.FILMS, key = "#previous.movie", condition = "#previous.movie != null"),
+            @CacheEvict(cacheNames = CacheConfiguration.FILMS, key = "#current.movie", condition = "#current.movie != null")
+    })
+    public void replace(Assessment previous, Assessment current) {
+        if (Objects.equals(previous.getMovie(), current.getMovie()) && Objects.equals(previous.getRating(), current.getRating()))
+            return;
+
+        remove(previous.getMovie(), previous.getRating());
+        add(current.getMovie(), current.getRating());
+    }
+
+    // Os contadores actualízanse cun $inc atómico, polo que as escrituras concorrentes non se pisan.
+    // A media recalcúlase despois a partir dos valores devoltos, e só se garda se ninguén
+    // cambiou os contadores entremedias; nese caso xa a gardará a outra escritura.
+    private void apply(String movie, Integer rating, int delta) {
+        if (movie == null || rating == null) return;
+        apply(movie, delta, (long) delta * rating, Collections.singletonMap(String.valueOf(rating), (long) delta));
+    }
+
+    private void apply(String movie, long count, long sum, Map<String, Long> histogram) {
+        Query query = query(where("_id").is(movie));
+        query.fields().include("rating");
+        Update update = new Update()
+                .inc("rating.count", count)
+                .inc("rating.sum", sum)
+                .currentDate("lastModified");
+        histogram.forEach((score, delta) -> update.inc("rating.histogram." + score, delta));
+
+        Film film = mongo.findAndModify(query, update, options().returnNew(true), Film.class);
+        if (film == null || film.getRating() == null) return;
+
+        Rating current = film.getRating();
+        Query unchanged = query(where("_id").is(movie)
+                .and("rating.count").is(current.getCount())
+                .and("rating.sum").is(current.getSum()));
+        mongo.updateFirst(unchanged, new Update().set("rating.average", average(current.getCount(), current.getSum())), Film.class);
+    }
+
+    // Recalcula os resumos a partir das valoracións para corrixir calquera desviación
+    // (escrituras que fallaron a medias, cambios feitos directamente na base de datos...)
+    // A agregación global só serve para atopar as películas desviadas: cada unha vólvese agregar
+    // xusto antes de escribila, e só se escribe se os contadores gardados seguen sendo os lidos.
+    // Se un $inc chegou entremedias non tocamos a película, e xa a revisaremos na seguinte pasada.
+    @CacheEvict(cacheNames = CacheConfiguration.FILMS, allEntries = true)
+    @Scheduled(cron = "${ratings.reconcile.cron:0 30 4 * * *}")
+    public void reconcile() {
+        Map<String, Rating> expected = summaries(null);
+
+        Query query = new Query();
+        query.fields().include("rating");
+        int fixed = 0;
+        try (CloseableIterator<Film> films = mongo.stream(query, Film.class)) {
+            while (films.hasNext()) {
+                Film film = films.next();
+                if (same(expected(expected, film.getId()), film.getRating())) continue;
+
+                Rating rating = expected(summaries(film.getId()), film.getId());
+                if (same(rating, film.getRating())) continue;
+
+                Rating stored = film.getRating();
+                Query unchanged = stored == null
+                        ? query(where("_id").is(film.getId()).and("rating").is(null))
+                        : query(where("_id").is(film.getId()).and("rating.count").is(stored.getCount()).and("rating.sum").is(stored.getSum()));
+                if (mongo.updateFirst(unchanged, new Update().set("rating", rating).currentDate("lastModified"), Film.class).getModifiedCount() > 0)
+                    fixed++;
+            }
+        }
+
+        if (fixed > 0) logger.warn("Reconciled the rating summary of {} movies", fixed);
+    }
+
+    // Resumo esperado dunha película a partir das súas valoracións agregadas
+    private static Rating expected(Map<String, Rating> summaries, String movie) {
+        Rating rating = summaries.get(movie);
+        if (rating == null) return new Rating(0, 0, new TreeMap<>());
+        return rating.setAverage(average(rating.getCount(), rating.getSum()));
+    }
+
+    // Agrega as valoracións dunha película, ou de todas se movie é null
+    private Map<String, Rating> summaries(String movie) {
+        Aggregation aggregation = movie == null
+                ? newAggregation(group("movie", "rating").count().as("count"))
+                : newAggregation(match(where("movie").is(movie)), group("movie", "rating").count().as("count"));
+        aggregation = aggregation.withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        Map<String, Rating> expected = new HashMap<>();
+        for (Document row : mongo.aggregate(aggregation, Assessment.class, Document.class)) {
+            Document id = row.get("_id", Document.class);
+            String movie = id.getString("movie");
+            Object rating = id.get("rating");
+            if (movie == null || !(rating instanceof Number)) continue;
+
+            long count = ((Number) row.get("count")).longValue();
+            long value = ((Number) rating).longValue();
+            Rating summary = expected.computeIfAbsent(movie, key -> new Rating(0, 0, new TreeMap<>()));
+            summary.setCount(summary.getCount() + count)
+                    .setSum(summary.getSum() + count * value)
+                    .getHistogram().merge(String.valueOf(value), count, Long::sum);
+        }
+        return expected;
+    }
+
+    private static Double average(long count, long sum) {
+        return count > 0 ? (double) sum / count : null;
+    }
+
+    // Comparamos ignorando as entradas a cero do histograma que deixan os decrementos
+    private static boolean same(Rating expected, Rating stored) {
+        if (stored == null) return expected.getCount() == 0;
+        if (expected.getCount() != stored.getCount() || expected.getSum() != stored.getSum()) return false;
+        if (!Objects.equals(expected.getAverage(), stored.getAverage())) return false;
+
+        Map<String, Long> histogram = new TreeMap<>();
+        if (stored.getHistogram() != null) {
+            stored.getHistogram().forEach((score, count) -> {
+                if (count != null && count != 0) histogram.put(score, count);
+            });
+        }
+        return histogram.equals(new TreeMap<>(expected.getHistogram()));
+    }
+}
@@ -0,0 +1,246 @@
+package gal.usc.etse.grei.es.project.service;
+
+import com.mongodb.client.MongoCursor;
+import gal.usc.etse.grei.es.project.model.Assessment;
+import gal.usc.etse.grei.es.project.model.Recommendation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Recomendacións por filtrado colaborativo película-película. O modelo (a matriz de valoracións
+// e a táboa cos K veciños de cada película) constrúese en memoria nun grupo fork-join propio e
+// substitúese de golpe, polo que as peticións len sempre un modelo completo sen bloquearse.
+// Os cambios nas valoracións márcanse e aplícanse periodicamente só sobre os usuarios afectados;
+// unha vez ao día volve construírse todo dende cero. As valoracións gardadas noutras instancias
+// ou importadas dende a liña de comandos atópanse pola súa data de modificación.
+@Service
+public class RecommendationService implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationService.class);
+    // Marxe para as valoracións gardadas por instancias co reloxo atrasado
+    private static final Duration SKEW = Duration.ofMinutes(5);
+
+    private final MongoOperations mongo;
+    private final ForkJoinPool pool;
+    private final ItemNeighbours.Settings settings;
+    private final int maxRefreshUsers;
+    private final AtomicReference<Model> model = new AtomicReference<>();
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock building = new ReentrantLock();
+    // Momento no que comezou a última lectura das valoracións
+    private volatile Instant readAt;
+    private final Timer fullTimer;
+    private final Timer refreshTimer;
+
+    @Autowired
+    public RecommendationService(
+            MongoOperations mongo,
+            MeterRegistry registry,
+            @Value("${recommendations.neighbours:50}") int neighbours,
+            @Value("${recommendations.min-support:2}") int minSupport,
+            @Value("${recommendations.max-user-ratings:2000}") int maxUserRatings,
+            @Value("${recommendations.parallelism:0}") int parallelism,
+            @Value("${recommendations.refresh.max-users:10000}") int maxRefreshUsers
+    ) {
+        this.mongo = mongo;
+        this.maxRefreshUsers = maxRefreshUsers;
+        this.settings = new ItemNeighbours.Settings(neighbours, minSupport, maxUserRatings);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("recommendations-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
+        this.fullTimer = Timer.builder("recommendations.build").tag("type", "full").register(registry);
+        this.refreshTimer = Timer.builder("recommendations.build").tag("type", "incremental").register(registry);
+        Gauge.builder("recommendations.ratings", model, current -> current.get() == null ? 0 : current.get().matrix.size()).register(registry);
+        Gauge.builder("recommendations.pending", changed, Set::size).register(registry);
+    }
+
+    // A primeira construción faise en segundo plano para non atrasar o arranque
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        pool.execute(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                logger.error("Could not build the recommendation model", e);
+            }
+        });
+    }
+
+    // Mentres non se complete a primeira construción non podemos responder
+    public boolean isReady() {
+        return model.get() != null;
+    }
+
+    //Mark user
+    public void changed(String user) {
+        if (user != null) changed.add(user);
+    }
+
+    //Full build
+    @Scheduled(cron = "${recommendations.rebuild.cron:0 0 5 * * *}")
+    public void rebuild() {
+        building.lock();
+        try {
+            fullTimer.record(() -> {
+                Instant started = Instant.now();
+                RatingMatrix matrix;
+                try (MongoCursor<Document> rows = RatingMatrix.rows(mongo, new Document())) {
+                    matrix = RatingMatrix.load(rows);
+                }
+                ItemNeighbours neighbours = ItemNeighbours.build(matrix, settings, pool);
+                model.set(new Model(matrix, neighbours));
+                readAt = started;
+                logger.info("Recommendation model built from {} ratings of {} users on {} movies",
+                        matrix.size(), matrix.userCount(), matrix.itemCount());
+            });
+        } finally {
+            building.unlock();
+        }
+    }
+
+    //Incremental build
+    @Scheduled(fixedDelayString = "${recommendations.refresh.delay:60000}", initialDelayString = "${recommendations.refresh.delay:60000}")
+    public void refresh() {
+        Model current = model.get();
+        if (current == null || !building.tryLock()) return;
+        List<String> users = new ArrayList<>();
+        try {
+            collect();
+            users.addAll(changed);
+            if (users.isEmpty()) return;
+            changed.removeAll(users);
+
+            // Tras unha importación masiva sae máis a conta construír todo de novo
+            if (users.size() > maxRefreshUsers) {
+                rebuild();
+                return;
+            }
+            refreshTimer.record(() -> {
+                RatingMatrix matrix;
+                try (MongoCursor<Document> rows = RatingMatrix.rows(mongo, new Document("user", new Document("$in", users)))) {
+                    matrix = current.matrix.withUsers(users, rows);
+                }
+                // As películas que estes usuarios valoraban antes e as que valoran agora
+                BitSet dirty = current.matrix.itemsOf(users);
+                dirty.or(matrix.itemsOf(users));
+
+                model.set(new Model(matrix, current.neighbours.update(matrix, dirty, settings, pool)));
+            });
+        } catch (RuntimeException e) {
+            // Volverán tentarse na seguinte actualización
+            changed.addAll(users);
+            logger.warn("Could not refresh the recommendation model", e);
+        } finally {
+            building.unlock();
+        }
+    }
+
+    // Marca os usuarios con valoracións gardadas dende a última lectura, en calquera instancia
+    private void collect() {
+        Instant since = readAt;
+        if (since == null) return;
+        Instant started = Instant.now();
+
+        Query query = new Query(where("lastModified").gte(since.minus(SKEW)));
+        query.fields().include("user");
+        try (CloseableIterator<Assessment> assessments = mongo.stream(query, Assessment.class)) {
+            assessments.forEachRemaining(assessment -> changed(assessment.getUser()));
+        }
+        readAt = started;
+    }
+
+    //Recommend
+    public Optional<List<Recommendation>> recommend(String email, int size) {
+        Model current = model.get();
+        if (current == null) return Optional.empty();
+
+        RatingMatrix matrix = current.matrix;
+        ItemNeighbours neighbours = current.neighbours;
+        Integer user = matrix.users.find(email);
+        if (user == null) return Optional.empty();
+
+        // Predición: media do usuario máis a media das súas valoracións centradas nas películas
+        // parecidas, ponderada pola similitude
+        int from = matrix.userOffsets[user];
+        int to = matrix.userOffsets[user + 1];
+        float mean = matrix.userMeans[user];
+        Map<Integer, float[]> candidates = new HashMap<>();
+        for (int p = from; p < to; p++) {
+            int item = matrix.userItems[p];
+            float value = matrix.userRatings[p] - mean;
+            int offset = item * neighbours.k;
+            for (int n = offset; n < offset + neighbours.size(item); n++) {
+                int candidate = neighbours.neighbours[n];
+                if (Arrays.binarySearch(matrix.userItems, from, to, candidate) >= 0) continue;
+                float[] sums = candidates.computeIfAbsent(candidate, key -> new float[2]);
+                sums[0] += neighbours.scores[n] * value;
+                sums[1] += neighbours.scores[n];
+            }
+        }
+        if (candidates.isEmpty()) return Optional.empty();
+
+        PriorityQueue<Map.Entry<Integer, Float>> best = new PriorityQueue<>(Map.Entry.comparingByValue());
+        candidates.forEach((item, sums) -> {
+            float score = Math.max(1, Math.min(10, mean + sums[0] / sums[1]));
+            best.add(new AbstractMap.SimpleImmutableEntry<>(item, score));
+            if (best.size() > size) best.poll();
+        });
+
+        List<Map.Entry<Integer, Float>> ranked = new ArrayList<>(best);
+        ranked.sort(Map.Entry.<Integer, Float>comparingByValue().reversed());
+
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<Integer, Float> entry : ranked) ids.add(matrix.items.name(entry.getKey()));
+        Map<String, String> titles = MovieTitles.of(mongo, ids);
+
+        List<Recommendation> result = new ArrayList<>();
+        for (Map.Entry<Integer, Float> entry : ranked) {
+            String movie = matrix.items.name(entry.getKey());
+            if (titles.containsKey(movie)) result.add(new Recommendation(movie, titles.get(movie), entry.getValue()));
+        }
+
+        if (result.isEmpty()) return Optional.empty();
+        return Optional.of(result);
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    private static final class Model {
+        private final RatingMatrix matrix;
+        private final ItemNeighbours neighbours;
+
+        private Model(RatingMatrix matrix, ItemNeighbours neighbours) {
+            this.matrix = matrix;
+            this.neighbours = neighbours;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package gal.usc.etse.grei.es.project.service;
 
 import gal.usc.etse.grei.es.project.model.DatabaseSequence;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -9,22 +10,84 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Reservamos os ids en bloques (hi/lo): un único $inc sobre o contador reserva un rango
+// enteiro que despois se reparte localmente, en lugar de escribir no contador en cada inserción.
+// Se a aplicación se reinicia pérdense os ids sen usar do bloque, polo que pode haber ocos
+// na secuencia, pero nunca ids repetidos.
 @Service
 public class SequenceGeneratorService {
+    private static final long DEFAULT_BLOCK_SIZE = 1000;
 
     private MongoOperations mongoOperations;
+    private Environment environment;
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
 
     @Autowired
-    public SequenceGeneratorService(MongoOperations mongoOperations) {
+    public SequenceGeneratorService(MongoOperations mongoOperations, Environment environment) {
         this.mongoOperations = mongoOperations;
+        this.environment = environment;
     }
 
     public long generateSequence(String seqName) {
+        Block block = blocks.computeIfAbsent(seqName, name -> Block.EMPTY);
+        long id = block.next();
+        if (id > 0) return id;
+
+        // O bloque esgotouse: só un fío por secuencia reserva o seguinte
+        synchronized (blocks) {
+            block = blocks.get(seqName);
+            id = block.next();
+            if (id > 0) return id;
+
+            long size = blockSize(seqName);
+            long first = reserve(seqName, size);
+            block = new Block(first + 1, first + size - 1);
+            blocks.put(seqName, block);
+            return first;
+        }
+    }
+
+    // Reserva n ids consecutivos e devolve o primeiro, para as insercións masivas
+    public long generateSequences(String seqName, long n) {
+        if (n < 1) throw new IllegalArgumentException("At least one id must be reserved");
+        return reserve(seqName, n);
+    }
+
+    private long reserve(String seqName, long n) {
         DatabaseSequence counter = mongoOperations.findAndModify(Query.query( new Criteria().and("_id").is(seqName)),
-                new Update().inc("seq",1), FindAndModifyOptions.options().returnNew(true).upsert(true),
+                new Update().inc("seq", n), FindAndModifyOptions.options().returnNew(true).upsert(true),
                 DatabaseSequence.class);
-        return !Objects.isNull(counter) ? counter.getSeq() : 1;
+        long last = !Objects.isNull(counter) ? counter.getSeq() : n;
+        return last - n + 1;
+    }
+
+    // Tamaño do bloque de cada secuencia (sequences.<nome>.block-size), ou o xeral (sequences.block-size)
+    private long blockSize(String seqName) {
+        Long size = environment.getProperty("sequences." + seqName + ".block-size", Long.class,
+                environment.getProperty("sequences.block-size", Long.class, DEFAULT_BLOCK_SIZE));
+        return Math.max(1, size);
+    }
+
+    private static final class Block {
+        private static final Block EMPTY = new Block(1, 0);
+
+        private final AtomicLong next;
+        private final long last;
+
+        private Block(long first, long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
+
+        // Devolve o seguinte id do bloque, ou 0 se xa non quedan
+        private long next() {
+            long id = next.getAndIncrement();
+            return id <= last ? id : 0;
+        }
     }
 }
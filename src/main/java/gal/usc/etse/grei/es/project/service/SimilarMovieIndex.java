@@ -0,0 +1,390 @@
+package gal.usc.etse.grei.es.project.service;
+
+import gal.usc.etse.grei.es.project.model.Film;
+import gal.usc.etse.grei.es.project.model.Person;
+import gal.usc.etse.grei.es.project.model.Producer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Índice LSH (MinHash) para atopar películas parecidas sen comparar cada película con todo o
+// catálogo. Cada película descríbese polo conxunto das súas palabras clave, xéneros, actores,
+// equipo e produtoras; a súa sinatura MinHash divídese en bandas e dúas películas son candidatas
+// se coinciden nalgunha banda enteira, o que pasa con moita probabilidade cando a semellanza de
+// Jaccard supera (1/bandas)^(1/filas). Os candidatos ordénanse despois pola semellanza exacta.
+// Igual que o índice de busca, recolle periodicamente os cambios feitos noutras instancias.
+@Service
+public class SimilarMovieIndex {
+    private static final int EMPTY = -2;
+    private static final int NONE = -1;
+    // Marxe para as películas gardadas por instancias co reloxo atrasado
+    private static final Duration SKEW = Duration.ofMinutes(5);
+
+    private final MongoOperations mongo;
+    private final int bands;
+    private final int rows;
+    private final int maxCandidates;
+    private final int[] seeds;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Cada película ocupa unha posición; os seus trazos gárdanse como hashes ordenados
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Deque<Integer> free = new ArrayDeque<>();
+    // Películas sen trazos: non entran nos baldes, pero contan ao buscar as borradas
+    private final Set<String> bare = new HashSet<>();
+    private String[] ids = new String[1024];
+    private int[][] features = new int[1024][];
+    // Listas encadeadas de cada balde: o elemento slot * bands + banda apunta ao seguinte
+    private int[] next;
+    private final Buckets buckets = new Buckets();
+    // Momento no que comezou a última lectura de Mongo, ou null mentres non se cargou
+    private volatile Instant loadedAt;
+
+    @Autowired
+    public SimilarMovieIndex(
+            MongoOperations mongo,
+            @Value("${similar.bands:16}") int bands,
+            @Value("${similar.rows:2}") int rows,
+            @Value("${similar.max-candidates:2000}") int maxCandidates
+    ) {
+        this.mongo = mongo;
+        this.bands = bands;
+        this.rows = rows;
+        this.maxCandidates = maxCandidates;
+        this.seeds = new int[bands * rows];
+        Random random = new Random(bands * 31L + rows);
+        for (int i = 0; i < seeds.length; i++) seeds[i] = random.nextInt();
+        this.next = new int[ids.length * bands];
+    }
+
+    // Cargamos o índice ao arrancar a aplicación, lendo só os campos que describen a película
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        Instant started = Instant.now();
+
+        lock.writeLock().lock();
+        try (CloseableIterator<Film> films = mongo.stream(fields(new Query()), Film.class)) {
+            slots.clear();
+            free.clear();
+            bare.clear();
+            Arrays.fill(ids, null);
+            Arrays.fill(features, null);
+            buckets.clear();
+            films.forEachRemaining(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        loadedAt = started;
+    }
+
+    // Reindexamos as películas modificadas dende a última lectura e, se o número de películas
+    // en Mongo non cadra co do índice, retiramos as que xa non existen (ver MovieSearchIndex)
+    @Scheduled(fixedDelayString = "${similar.refresh:30000}", initialDelayString = "${similar.refresh:30000}")
+    public synchronized void refresh() {
+        if (loadedAt == null) return;
+        Instant started = Instant.now();
+
+        Query modified = fields(new Query(where("lastModified").gte(loadedAt.minus(SKEW))));
+        try (CloseableIterator<Film> films = mongo.stream(modified, Film.class)) {
+            films.forEachRemaining(this::index);
+        }
+
+        long stored = mongo.estimatedCount(Film.class);
+        Set<String> indexed = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            if (stored != slots.size() + bare.size()) {
+                indexed.addAll(slots.keySet());
+                indexed.addAll(bare);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (!indexed.isEmpty()) {
+            Query ids = new Query();
+            ids.fields().include("_id");
+            try (CloseableIterator<Film> films = mongo.stream(ids, Film.class)) {
+                films.forEachRemaining(film -> indexed.remove(film.getId()));
+            }
+            indexed.forEach(this::delete);
+        }
+        loadedAt = started;
+    }
+
+    //Index one
+    public void index(Film film) {
+        if (film == null || film.getId() == null) return;
+
+        lock.writeLock().lock();
+        try {
+            remove(film.getId());
+            add(film);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Remove one
+    public void delete(String id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // As size películas máis parecidas á indicada, coa súa semellanza de Jaccard, de maior a menor.
+    // Devolve null se a película non está no índice
+    public LinkedHashMap<String, Float> similar(String id, int size) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            if (slot == null) return null;
+
+            int[] own = features[slot];
+            int[] signature = signature(own);
+            Set<Integer> candidates = new HashSet<>();
+            for (int band = 0; band < bands && candidates.size() < maxCandidates; band++) {
+                int bucket = buckets.find(key(band, signature));
+                if (bucket < 0) continue;
+                for (int element = buckets.heads[bucket]; element != NONE && candidates.size() < maxCandidates; element = next[element]) {
+                    int other = element / bands;
+                    if (other != slot) candidates.add(other);
+                }
+            }
+
+            PriorityQueue<Map.Entry<Integer, Float>> best = new PriorityQueue<>(Map.Entry.comparingByValue());
+            for (int other : candidates) {
+                float similarity = jaccard(own, features[other]);
+                if (similarity <= 0) continue;
+                best.add(new AbstractMap.SimpleImmutableEntry<>(other, similarity));
+                if (best.size() > size) best.poll();
+            }
+
+            List<Map.Entry<Integer, Float>> ranked = new ArrayList<>(best);
+            ranked.sort(Map.Entry.<Integer, Float>comparingByValue().reversed());
+            LinkedHashMap<String, Float> result = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Float> entry : ranked) result.put(ids[entry.getKey()], entry.getValue());
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(Film film) {
+        int[] set = features(film);
+        if (set.length == 0) {
+            bare.add(film.getId());
+            return;
+        }
+
+        int slot = free.isEmpty() ? slots.size() : free.pop();
+        if (slot >= ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            features = Arrays.copyOf(features, capacity);
+            next = Arrays.copyOf(next, capacity * bands);
+        }
+        slots.put(film.getId(), slot);
+        ids[slot] = film.getId();
+        features[slot] = set;
+
+        int[] signature = signature(set);
+        for (int band = 0; band < bands; band++) {
+            int element = slot * bands + band;
+            int bucket = buckets.insert(key(band, signature));
+            next[element] = buckets.heads[bucket];
+            buckets.heads[bucket] = element;
+        }
+    }
+
+    private void remove(String id) {
+        bare.remove(id);
+        Integer slot = slots.remove(id);
+        if (slot == null) return;
+
+        int[] signature = signature(features[slot]);
+        for (int band = 0; band < bands; band++) {
+            int element = slot * bands + band;
+            int bucket = buckets.find(key(band, signature));
+            if (bucket < 0) continue;
+            if (buckets.heads[bucket] == element) {
+                buckets.heads[bucket] = next[element];
+                continue;
+            }
+            for (int previous = buckets.heads[bucket]; previous != NONE; previous = next[previous]) {
+                if (next[previous] == element) {
+                    next[previous] = next[element];
+                    break;
+                }
+            }
+        }
+        ids[slot] = null;
+        features[slot] = null;
+        free.push(slot);
+    }
+
+    private static Query fields(Query query) {
+        query.fields().include("keywords").include("genres").include("cast").include("crew").include("producers");
+        return query;
+    }
+
+    // Trazos da película como hashes de 32 bits, ordenados e sen repetidos
+    private static int[] features(Film film) {
+        Set<String> values = new HashSet<>();
+        if (film.getKeywords() != null) film.getKeywords().forEach(keyword -> feature(values, "k", keyword));
+        if (film.getGenres() != null) film.getGenres().forEach(genre -> feature(values, "g", genre));
+        if (film.getCast() != null) film.getCast().forEach(cast -> feature(values, "a", person(cast)));
+        if (film.getCrew() != null) film.getCrew().forEach(crew -> feature(values, "c", person(crew)));
+        if (film.getProducers() != null) film.getProducers().stream().filter(Objects::nonNull).map(Producer::getName).forEach(name -> feature(values, "p", name));
+
+        int[] result = new int[values.size()];
+        int size = 0;
+        for (String value : values) result[size++] = mix(value.hashCode());
+        Arrays.sort(result);
+
+        int unique = 0;
+        for (int i = 0; i < size; i++) if (unique == 0 || result[unique - 1] != result[i]) result[unique++] = result[i];
+        return Arrays.copyOf(result, unique);
+    }
+
+    private static String person(Person person) {
+        if (person == null) return null;
+        return person.getId() != null ? person.getId() : person.getName();
+    }
+
+    private static void feature(Set<String> values, String kind, String value) {
+        if (value == null || value.isBlank()) return;
+        values.add(kind + ":" + value.trim().toLowerCase(Locale.ROOT));
+    }
+
+    private int[] signature(int[] set) {
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int value : set) {
+            for (int i = 0; i < seeds.length; i++) {
+                int hash = mix(value ^ seeds[i]);
+                if (hash < signature[i]) signature[i] = hash;
+            }
+        }
+        return signature;
+    }
+
+    // A banda entra na clave para que os baldes de bandas distintas non se mesturen
+    private long key(int band, int[] signature) {
+        int hash = band;
+        for (int i = band * rows; i < (band + 1) * rows; i++) hash = 31 * hash + signature[i];
+        return ((long) band << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    // Semellanza de Jaccard exacta de dous conxuntos ordenados
+    private static float jaccard(int[] a, int[] b) {
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (float) common / (a.length + b.length - common);
+    }
+
+    private static int mix(int value) {
+        value ^= value >>> 16;
+        value *= 0x85ebca6b;
+        value ^= value >>> 13;
+        value *= 0xc2b2ae35;
+        value ^= value >>> 16;
+        return value;
+    }
+
+    // Táboa hash de direccionamento aberto clave do balde -> primeiro elemento da súa lista.
+    // Os baldes que quedan baleiros manteñen a clave (NONE) ata que a táboa crece
+    private static final class Buckets {
+        private long[] keys;
+        private int[] heads;
+        private int used;
+
+        private Buckets() {
+            clear();
+        }
+
+        private void clear() {
+            keys = new long[1 << 12];
+            heads = new int[1 << 12];
+            Arrays.fill(heads, EMPTY);
+            used = 0;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            for (int index = hash(key) & mask; heads[index] != EMPTY; index = (index + 1) & mask) {
+                if (keys[index] == key) return index;
+            }
+            return -1;
+        }
+
+        private int insert(long key) {
+            if (used >= keys.length * 3 / 4) grow();
+            int mask = keys.length - 1;
+            int index = hash(key) & mask;
+            for (; heads[index] != EMPTY; index = (index + 1) & mask) {
+                if (keys[index] == key) return index;
+            }
+            keys[index] = key;
+            heads[index] = NONE;
+            used++;
+            return index;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldHeads = heads;
+            int live = 0;
+            for (int head : oldHeads) if (head >= 0) live++;
+            int capacity = keys.length;
+            while (live >= capacity / 2) capacity *= 2;
+
+            keys = new long[capacity];
+            heads = new int[capacity];
+            Arrays.fill(heads, EMPTY);
+            used = 0;
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldHeads[i] < 0) continue;
+                int index = hash(oldKeys[i]) & mask;
+                while (heads[index] != EMPTY) index = (index + 1) & mask;
+                keys[index] = oldKeys[i];
+                heads[index] = oldHeads[i];
+                used++;
+            }
+        }
+
+        private static int hash(long key) {
+            return mix((int) (key ^ (key >>> 32)));
+        }
+    }
+}
@@ -1,22 +1,30 @@
 package gal.usc.etse.grei.es.project.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ser.FilterProvider;
-import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
-import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
-import gal.usc.etse.grei.es.project.configuration.SerializationConfiguration;
+import gal.usc.etse.grei.es.project.configuration.CacheConfiguration;
 import gal.usc.etse.grei.es.project.model.Assessment;
+import gal.usc.etse.grei.es.project.model.FriendSuggestion;
 import gal.usc.etse.grei.es.project.model.Friendship;
+import gal.usc.etse.grei.es.project.model.FriendshipPath;
 import gal.usc.etse.grei.es.project.model.User;
+import gal.usc.etse.grei.es.project.model.Views;
 import gal.usc.etse.grei.es.project.repository.AssessmentRepository;
 import gal.usc.etse.grei.es.project.repository.FriendshipRepository;
 import gal.usc.etse.grei.es.project.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.*;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.util.*;
 
 @Service
@@ -25,13 +33,21 @@ public class UserService {
     private final AssessmentRepository assessments;
     private final FriendshipRepository friendships;
     private final PasswordEncoder encoder;
+    private final KeysetPagination keyset;
+    private final MongoOperations mongo;
+    private final FriendshipGraph graph;
+    private final PatchUtils patch;
 
     @Autowired
-    public UserService(UserRepository users, AssessmentRepository assessments, FriendshipRepository friendships, PasswordEncoder encoder) {
+    public UserService(UserRepository users, AssessmentRepository assessments, FriendshipRepository friendships, PasswordEncoder encoder, KeysetPagination keyset, MongoOperations mongo, FriendshipGraph graph, PatchUtils patch) {
         this.users = users;
         this.assessments = assessments;
         this.friendships = friendships;
         this.encoder = encoder;
+        this.keyset = keyset;
+        this.mongo = mongo;
+        this.graph = graph;
+        this.patch = patch;
     }
 
     //Get all
@@ -42,7 +58,10 @@ public class UserService {
 
         Example<User> filter = Example.of(new User().setEmail(email).setName(name), matcher);
 
-        Page<User> result = users.findAll(filter, request);
+        // Lemos só os campos da vista resumida e contamos o total só cando fai falla
+        Query query = new Query(new Criteria().alike(filter));
+        List<User> content = mongo.find(summary(Query.of(query).with(request)), User.class);
+        Page<User> result = PageableExecutionUtils.getPage(content, request, () -> mongo.count(query, User.class));
 
         if(result.isEmpty())
             return Optional.empty();
@@ -50,6 +69,33 @@ public class UserService {
         else return Optional.of(result);
     }
 
+    //Get all after cursor
+    public Optional<KeysetSlice<User>> getAllAfter(String after, int size, Sort sort, String email, String name) {
+        ExampleMatcher matcher = ExampleMatcher.matching().withIgnoreCase().withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING);
+
+        Example<User> filter = Example.of(new User().setEmail(email).setName(name), matcher);
+
+        KeysetSlice<User> result = keyset.find(summary(new Query(new Criteria().alike(filter))), User.class, size, sort, after);
+
+        if(result.isEmpty())
+            return Optional.empty();
+
+        else return Optional.of(result);
+    }
+
+    private static Query summary(Query query) {
+        for (String field : Views.USER_SUMMARY) query.fields().include(field);
+        return query;
+    }
+
+    //Export all
+    public CloseableIterator<User> stream(Instant modifiedSince) {
+        // Os contrasinais nunca saen da base de datos
+        Query query = ExportQuery.modifiedSince(modifiedSince);
+        query.fields().exclude("password");
+        return mongo.stream(query, User.class);
+    }
+
     //Get assessments
     public Optional<Page<Assessment>> getAssessments(int page, int size, Sort sort, String email) {
         Pageable request = PageRequest.of(page, size, sort);
@@ -60,7 +106,17 @@ public class UserService {
         return Optional.of(result);
     }
 
+    //Get assessments after cursor
+    public Optional<KeysetSlice<Assessment>> getAssessmentsAfter(String after, int size, Sort sort, String email) {
+        KeysetSlice<Assessment> result = keyset.find(new Query(Criteria.where("user").is(email)), Assessment.class, size, sort, after);
+
+        if(result.isEmpty())
+            return Optional.empty();
+        return Optional.of(result);
+    }
+
     //Get one
+    @Cacheable(cacheNames = CacheConfiguration.USERS, key = "#email", unless = "#result == null")
     public Optional<User> get(String email) {
         return users.findById(email);
     }
@@ -72,6 +128,10 @@ public class UserService {
     }
 
     //Update one
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfiguration.USERS, key = "#user.email"),
+            @CacheEvict(cacheNames = CacheConfiguration.CREDENTIALS, key = "#user.email")
+    })
     public Optional<User> updateUser(User user){
         User userEdit = users.findById(user.getEmail()).get();
         userEdit.updateUser(user);
@@ -79,18 +139,19 @@ public class UserService {
     }
 
     //Modify one
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfiguration.USERS, key = "#email"),
+            @CacheEvict(cacheNames = CacheConfiguration.CREDENTIALS, key = "#email")
+    })
     public Optional<User> modifyUser(String email,  List<Map<String, Object>> updates) throws JsonPatchException {
-        FilterProvider filterProvider= new SimpleFilterProvider().setFailOnUnknownId(false);
-        new SerializationConfiguration().jsonCustomizer();
-        User userEdit = users.findById(email).get();
-        ObjectMapper mapper=new ObjectMapper();
-        mapper.setFilterProvider(filterProvider);
-        PatchUtils patch = new PatchUtils(mapper);
-        User updated = patch.patch(userEdit, updates);
-        return Optional.of(this.users.save(updated));
+        return patch.patch(email, User.class, updates);
     }
 
     //Delete one
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfiguration.USERS, key = "#email"),
+            @CacheEvict(cacheNames = CacheConfiguration.CREDENTIALS, key = "#email")
+    })
     public void deleteUser(String email) {
         users.deleteById(email);
     }
@@ -105,6 +166,16 @@ public class UserService {
         return Optional.of(result);
     }
 
+    //Get friends after cursor
+    public Optional<KeysetSlice<Friendship>> getFriendshipsAfter(String after, int size, Sort sort, String user){
+        Query filter = new Query(new Criteria().orOperator(Criteria.where("user").is(user), Criteria.where("friend").is(user)));
+        KeysetSlice<Friendship> result = keyset.find(filter, Friendship.class, size, sort, after);
+
+        if(result.isEmpty())
+            return Optional.empty();
+        return Optional.of(result);
+    }
+
     //Get friendship
     public Optional<Friendship> getFriendship(String email, String friend){
         Optional<Friendship> aux = friendships.findByUserAndFriend(email, friend);
@@ -114,10 +185,61 @@ public class UserService {
 
     //Are friends
     public Boolean areFriends(String email, String friend) {
-        Optional<Friendship> aux = friendships.findByUserAndFriend(email, friend);
-        if(aux.isEmpty()){aux = friendships.findByUserAndFriend(friend, email);}
-        if(aux.isEmpty()){return false;}
-        return true;
+        // Respondemos dende o grafo en memoria; só imos a Mongo se aínda non se cargou
+        if(graph.isLoaded()){return graph.areFriends(email, friend);}
+
+        Optional<Friendship> aux = this.getFriendship(email, friend);
+        return aux.isPresent() && Boolean.TRUE.equals(aux.get().getConfirmed());
+    }
+
+    // As suxestións, os amigos comúns e as distancias calcúlanse só dende o grafo en memoria
+    public boolean isFriendGraphLoaded() {
+        return graph.isLoaded();
+    }
+
+    //Suggest friends
+    public Optional<List<FriendSuggestion>> getFriendSuggestions(String email, int size) {
+        // Tampouco suxerimos a quen xa ten unha solicitude pendente con el
+        Query pending = new Query(new Criteria().orOperator(Criteria.where("user").is(email), Criteria.where("friend").is(email))
+                .and("confirmed").ne(true));
+        pending.fields().include("user").include("friend");
+        Set<String> exclude = new HashSet<>();
+        for (Friendship friendship : mongo.find(pending, Friendship.class)) {
+            exclude.add(friendship.getUser());
+            exclude.add(friendship.getFriend());
+        }
+
+        LinkedHashMap<String, Integer> ranked = graph.suggestions(email, exclude, size);
+        if (ranked.isEmpty()) return Optional.empty();
+
+        // Os nomes tráense nunha única consulta; os usuarios xa borrados descártanse
+        Query query = new Query(Criteria.where("_id").in(ranked.keySet()));
+        query.fields().include("name");
+        Map<String, String> names = new HashMap<>();
+        for (User user : mongo.find(query, User.class)) names.put(user.getEmail(), user.getName());
+
+        List<FriendSuggestion> result = new ArrayList<>();
+        ranked.forEach((user, mutual) -> {
+            if (names.containsKey(user)) result.add(new FriendSuggestion(user, names.get(user), mutual));
+        });
+
+        if (result.isEmpty()) return Optional.empty();
+        return Optional.of(result);
+    }
+
+    //Mutual friends
+    public Optional<List<String>> getMutualFriends(String email, String other) {
+        List<String> mutual = graph.mutual(email, other);
+        if (mutual.isEmpty()) return Optional.empty();
+        return Optional.of(mutual);
+    }
+
+    //Friendship distance
+    // Os usuarios intermedios só se amosan enteiros se full: as amizades doutros usuarios son privadas
+    public Optional<FriendshipPath> getPath(String email, String other, boolean full) {
+        List<String> path = graph.path(email, other);
+        if (path == null) return Optional.empty();
+        return Optional.of(new FriendshipPath(email, other, path, full));
     }
 
     //Add friend
@@ -129,11 +251,14 @@ public class UserService {
     //Delete friendship
     public void deleteFriend(String email, String friend) {
         this.friendships.delete(this.getFriendship(email, friend).get());
+        graph.disconnect(email, friend);
     }
 
     //Modify friendship
     public Optional<Friendship> modifyFriendship(String email, String friend) throws JsonPatchException {
         Friendship userFriendship = this.friendships.findByUserAndFriend(email, friend).get().setConfirmed(true).setSince(new Date());
-        return Optional.of(this.friendships.save(userFriendship));
+        Friendship saved = this.friendships.save(userFriendship);
+        graph.connect(email, friend);
+        return Optional.of(saved);
     }
 }